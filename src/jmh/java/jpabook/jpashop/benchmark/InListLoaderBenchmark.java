@@ -0,0 +1,149 @@
+package jpabook.jpashop.benchmark;
+
+import com.querydsl.core.types.Projections;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.jpashop.JpashopApplication;
+import jpabook.jpashop.domain.QOrderItem;
+import jpabook.jpashop.domain.item.QItem;
+import jpabook.jpashop.repository.InListLoader;
+import jpabook.jpashop.repository.order.query.OrderItemQueryDto;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.groupingBy;
+
+/**
+ * 주문 아이템 in 절 조회 : 한번에 보내기(RAW) vs InListLoader 청크 + 패딩(PADDED).
+ *
+ * 호출마다 id 개수를 idCount 에서 최대 10% 까지 줄여서 보낸다 (실제 페이지 크기가 매번 다른 상황).
+ * RAW 는 크기마다 새 SQL 이 만들어지고, PADDED 는 1, 2, 4 ... 512 크기의 SQL 만 재사용한다.
+ * planCacheHitRate : 최근 PLAN_CACHE_SIZE 개 in 절 크기 안에 든 쿼리 비율 (= 쿼리 플랜 / statement 캐시 적중률).
+ *   캐시는 H2 세션 query cache 기본 크기(8)만큼의 LRU 로 두고 iteration 마다 비운다.
+ *   크기 제한 없이 두면 RAW 도 가능한 크기를 다 본 뒤에는 적중률이 1 로 올라간다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class InListLoaderBenchmark {
+
+    private static final int ORDER_COUNT = 50_000;
+    private static final int PLAN_CACHE_SIZE = 8;
+
+    @Param({"10", "1000", "50000"})
+    private int idCount;
+
+    @Param({"RAW", "PADDED"})
+    private String mode;
+
+    private ConfigurableApplicationContext context;
+    private EntityManagerFactory entityManagerFactory;
+    private TransactionTemplate transactionTemplate;
+    private final Set<Integer> seenSizes = Collections.newSetFromMap(Collections.synchronizedMap(
+            new LinkedHashMap<Integer, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                    return size() > PLAN_CACHE_SIZE;
+                }
+            }));
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(JpashopApplication.class)
+                .profiles("bench")
+                .web(WebApplicationType.NONE)
+                .run();
+
+        entityManagerFactory = context.getBean(EntityManagerFactory.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        transactionTemplate.setReadOnly(true);
+
+        new OrderDataSeeder(context.getBean(JdbcTemplate.class)).seed(ORDER_COUNT);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPlanCache() {
+        seenSizes.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class PlanCounter {
+        private long queries;
+        private long hits;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            queries = 0;
+            hits = 0;
+        }
+
+        public double planCacheHitRate() {
+            return queries == 0 ? 0 : (double) hits / queries;
+        }
+    }
+
+    @Benchmark
+    public Map<Long, List<OrderItemQueryDto>> loadOrderItems(PlanCounter counter) {
+        List<Long> ids = randomIds();
+        return transactionTemplate.execute(status -> {
+            Function<List<Long>, List<OrderItemQueryDto>> loader = chunk -> {
+                counter.queries++;
+                if (!seenSizes.add(chunk.size())) {
+                    counter.hits++;
+                }
+                return findOrderItemDtosIn(chunk);
+            };
+
+            if ("RAW".equals(mode)) {
+                return loader.apply(ids).stream().collect(groupingBy(OrderItemQueryDto::getOrderId));
+            }
+            return InListLoader.loadGrouped(ids, loader, OrderItemQueryDto::getOrderId);
+        });
+    }
+
+    private List<Long> randomIds() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = idCount - random.nextInt(Math.max(1, idCount / 10));
+        int start = random.nextInt(ORDER_COUNT - size + 1);
+        List<Long> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(OrderDataSeeder.ID_BASE + start + i);
+        }
+        return ids;
+    }
+
+    private List<OrderItemQueryDto> findOrderItemDtosIn(List<Long> orderIds) {
+        QItem item = QItem.item;
+        QOrderItem orderItem = QOrderItem.orderItem;
+
+        return new JPAQueryFactory(EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory))
+                .select(Projections.constructor(OrderItemQueryDto.class,
+                        orderItem.order.id, orderItem.item.name, orderItem.orderPrice, orderItem.count))
+                .from(orderItem)
+                .join(orderItem.item, item)
+                .where(orderItem.order.id.in(orderIds))
+                .fetch();
+    }
+}
@@ -0,0 +1,94 @@
+package jpabook.jpashop.benchmark;
+
+import jpabook.jpashop.JpashopApplication;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.service.OrderArchiver;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * archive 전 / 후 hot 테이블 검색 비교.
+ *
+ * 시더는 주문을 1분 간격으로 과거로 찍으므로 30일(43,200건)보다 오래된 주문이 archive 대상이다.
+ * (10만건 -> 약 57%, 100만건 -> 약 96% 가 archive 로 이동)
+ * 이동 전후 테이블별 row 수는 Setup 에서 로그로 남기고, 지연시간은 archived=false / true 결과를 비교한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OrderArchiveBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderArchiveBenchmark.class);
+
+    private static final int HOT_DAYS = 30;
+
+    @Param({"100000", "1000000"})
+    private int orderCount;
+
+    @Param({"false", "true"})
+    private boolean archived;
+
+    private ConfigurableApplicationContext context;
+    private OrderRepository orderRepository;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(JpashopApplication.class)
+                .profiles("bench")
+                .web(WebApplicationType.NONE)
+                .run();
+
+        orderRepository = context.getBean(OrderRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        transactionTemplate.setReadOnly(true);
+
+        new OrderDataSeeder(context.getBean(JdbcTemplate.class)).seed(orderCount);
+
+        OrderArchiver archiver = context.getBean(OrderArchiver.class);
+        if (archived) {
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(HOT_DAYS);
+            archiver.archive(cutoff, cutoff, Integer.MAX_VALUE, 0);
+        }
+        log.info("table rows (orderCount={}, archived={}) : {}", orderCount, archived, archiver.tableSizes());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // 회원명 검색 + 주문 아이템 in 쿼리 (v5)
+    @Benchmark
+    public Object memberNameSearch() {
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberName("member12");
+        return transactionTemplate.execute(status -> orderRepository.findOrderQueryDtoOptimization(0, 100, orderSearch));
+    }
+
+    // 상태 조건 + 주문일 역순 페이지 (summary)
+    @Benchmark
+    public Object statusSearch() {
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setOrderStatus(OrderStatus.ORDER);
+        return transactionTemplate.execute(status -> orderRepository.findAllSummaryByQuerydsl(0, 100, orderSearch));
+    }
+
+    // 깊은 offset : 앞 페이지 row 를 읽고 버리는 양이 hot 테이블 크기에 비례한다
+    @Benchmark
+    public Object deepOffsetIds() {
+        return transactionTemplate.execute(status -> orderRepository.findOrderIdsByQuerydsl(40_000, 100, new OrderSearch()));
+    }
+}
@@ -0,0 +1,128 @@
+package jpabook.jpashop.benchmark;
+
+import jpabook.jpashop.domain.MemberNameGram;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 벤치마크용 대량 데이터 적재.
+ * JPA 로 100만건을 persist 하면 적재 자체가 벤치마크보다 오래 걸리므로 JDBC batch insert 로 직접 넣는다.
+ * id 는 ID_BASE 부터 직접 넣는다. 엔티티마다 쓰는 시퀀스(orders_seq, member_seq ... pooled-lo)는 1 부터 올라가므로
+ * InitDb 나 벤치마크 도중 JPA 로 저장한 엔티티와 겹치지 않는다. (order_item 은 order id * ITEMS_PER_ORDER 부터)
+ * 시드 시점에 시퀀스가 이미 ID_BASE 를 넘었으면 겹칠 수 있으므로 멈춘다.
+ */
+public class OrderDataSeeder {
+
+    static final long ID_BASE = 1_000_000_000L;
+    static final int ITEMS_PER_ORDER = 2;
+    static final int ORDERS_PER_MEMBER = 10;
+    static final int ITEM_COUNT = 100;
+
+    private static final int CHUNK = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OrderDataSeeder(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void seed(int orderCount) {
+        int memberCount = Math.max(1, orderCount / ORDERS_PER_MEMBER);
+
+        checkSequencesBelowIdBase();
+        insertItems();
+        insertMembers(memberCount);
+        insertOrders(orderCount, memberCount);
+    }
+
+    private void checkSequencesBelowIdBase() {
+        Long maxSequenceValue = jdbcTemplate.queryForObject(
+                "select max(current_value) from information_schema.sequences", Long.class);
+        if (maxSequenceValue != null && maxSequenceValue >= ID_BASE) {
+            throw new IllegalStateException("시퀀스 값(" + maxSequenceValue + ")이 ID_BASE 를 넘어서 시드 id 와 겹칠 수 있습니다");
+        }
+    }
+
+    private void insertItems() {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            rows.add(new Object[]{ID_BASE + i, "B", "BENCH BOOK " + i, 10000 + i, Integer.MAX_VALUE});
+        }
+        jdbcTemplate.batchUpdate("insert into item (item_id, dtype, name, price, stock_quantity) values (?, ?, ?, ?, ?)", rows);
+    }
+
+    // JDBC 로 넣으므로 MemberNameGramIndexer / OrderSummaryProjector 가 동작하지 않는다. 색인과 summary 도 직접 넣는다
+    private void insertMembers(int memberCount) {
+        String memberSql = "insert into member (member_id, name, city, street, zipcode) values (?, ?, ?, ?, ?)";
+        String gramSql = "insert into member_name_gram (gram, member_id) values (?, ?)";
+
+        List<Object[]> rows = new ArrayList<>(CHUNK);
+        List<Object[]> gramRows = new ArrayList<>(CHUNK);
+        for (int i = 0; i < memberCount; i++) {
+            String name = "member" + i;
+            rows.add(new Object[]{ID_BASE + i, name, "서울", "street" + i, "1111"});
+            for (String gram : MemberNameGram.gramsOf(name)) {
+                gramRows.add(new Object[]{gram, ID_BASE + i});
+            }
+            if (rows.size() == CHUNK) {
+                flush(memberSql, rows);
+            }
+            if (gramRows.size() >= CHUNK) {
+                flush(gramSql, gramRows);
+            }
+        }
+        flush(memberSql, rows);
+        flush(gramSql, gramRows);
+    }
+
+    private void insertOrders(int orderCount, int memberCount) {
+        String deliverySql = "insert into delivery (delivery_id, city, street, zipcode, status) values (?, ?, ?, ?, ?)";
+        String orderSql = "insert into orders (order_id, member_id, delivery_id, order_date, status) values (?, ?, ?, ?, ?)";
+        String orderItemSql = "insert into order_item (order_item_id, orders_id, item_id, order_price, count) values (?, ?, ?, ?, ?)";
+        String summarySql = "insert into order_summary (order_id, member_id, member_name, order_date, status, city, street, zipcode) " +
+                "values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+        List<Object[]> deliveries = new ArrayList<>(CHUNK);
+        List<Object[]> orders = new ArrayList<>(CHUNK);
+        List<Object[]> orderItems = new ArrayList<>(CHUNK * ITEMS_PER_ORDER);
+        List<Object[]> summaries = new ArrayList<>(CHUNK);
+        LocalDateTime now = LocalDateTime.now();
+
+        for (int i = 0; i < orderCount; i++) {
+            long id = ID_BASE + i;
+            long memberId = ID_BASE + (i % memberCount);
+            Timestamp orderDate = Timestamp.valueOf(now.minusMinutes(i));
+
+            deliveries.add(new Object[]{id, "서울", "street" + i, "1111", "READY"});
+            orders.add(new Object[]{id, memberId, id, orderDate, "ORDER"});
+            summaries.add(new Object[]{id, memberId, "member" + (i % memberCount), orderDate, "ORDER", "서울", "street" + i, "1111"});
+            for (int j = 0; j < ITEMS_PER_ORDER; j++) {
+                long itemId = ID_BASE + ((i + j) % ITEM_COUNT);
+                orderItems.add(new Object[]{id * ITEMS_PER_ORDER + j, id, itemId, 10000, j + 1});
+            }
+
+            if (orders.size() == CHUNK) {
+                flush(deliverySql, deliveries);
+                flush(orderSql, orders);
+                flush(orderItemSql, orderItems);
+                flush(summarySql, summaries);
+            }
+        }
+        flush(deliverySql, deliveries);
+        flush(orderSql, orders);
+        flush(orderItemSql, orderItems);
+        flush(summarySql, summaries);
+    }
+
+    private void flush(String sql, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(sql, rows);
+        rows.clear();
+    }
+}
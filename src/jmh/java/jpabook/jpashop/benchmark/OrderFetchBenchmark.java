@@ -0,0 +1,138 @@
+package jpabook.jpashop.benchmark;
+
+import jpabook.jpashop.JpashopApplication;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.monitoring.SqlStatementCounter;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * V1 ~ V6 주문 조회 전략 비교.
+ *
+ * 처리량(thrpt), p99(sample), 호출당 할당 바이트(gc.alloc.rate.norm), 호출당 SQL 수(statementsPerCall)를 한번에 본다.
+ * V1 / V3 의 리포지토리 메서드는 1000건으로 고정(.limit(1000))이므로 모든 전략이 같은 1000건 페이지를 읽도록 맞춘다.
+ * 실행 : ./gradlew jmh  (결과는 build/reports/jmh/results.json)
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OrderFetchBenchmark {
+
+    private static final int LIMIT = 1000;
+
+    @Param({"1000", "100000", "1000000"})
+    private int orderCount;
+
+    private ConfigurableApplicationContext context;
+    private OrderRepository orderRepository;
+    private TransactionTemplate transactionTemplate;
+    private SqlStatementCounter sqlStatementCounter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(JpashopApplication.class)
+                .profiles("bench")
+                .web(WebApplicationType.NONE)
+                .run();
+
+        orderRepository = context.getBean(OrderRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        transactionTemplate.setReadOnly(true);
+        sqlStatementCounter = context.getBean(SqlStatementCounter.class);
+
+        new OrderDataSeeder(context.getBean(JdbcTemplate.class)).seed(orderCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class SqlCounter {
+        private long statements;
+        private long calls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            statements = 0;
+            calls = 0;
+        }
+
+        public double statementsPerCall() {
+            return calls == 0 ? 0 : (double) statements / calls;
+        }
+    }
+
+    // V1 : 엔티티 조회 + 지연로딩 강제 초기화 (default_batch_fetch_size 적용)
+    @Benchmark
+    public Object v1_lazyInit(SqlCounter counter) {
+        return measure(counter, status -> {
+            List<Order> orders = orderRepository.findAllByQuerydsl(new OrderSearch());
+            for (Order order : orders) {
+                order.getMember().getName();
+                order.getDelivery().getAddress();
+                order.getOrderItems().forEach(o -> o.getItem().getName());
+            }
+            return orders;
+        });
+    }
+
+    // V3 : 컬렉션 fetch join (메모리 페이징)
+    @Benchmark
+    public Object v3_collectionFetchJoin(SqlCounter counter) {
+        return measure(counter, status -> {
+            List<Order> orders = orderRepository.findAllWithItemByQuerydsl(new OrderSearch());
+            orders.forEach(o -> o.getOrderItems().forEach(oi -> oi.getItem().getName()));
+            return orders;
+        });
+    }
+
+    // V3.1 : ToOne fetch join + 컬렉션 batch fetch
+    @Benchmark
+    public Object v3_1_batchFetch(SqlCounter counter) {
+        return measure(counter, status -> {
+            List<Order> orders = orderRepository.findAllPageWithMemberDeliveryByQuerydsl(0, LIMIT, new OrderSearch());
+            orders.forEach(o -> o.getOrderItems().forEach(oi -> oi.getItem().getName()));
+            return orders;
+        });
+    }
+
+    // V4 : DTO 직접 조회 1 + N
+    @Benchmark
+    public Object v4_dtoPerOrder(SqlCounter counter) {
+        return measure(counter, status -> orderRepository.findOrderQueryDto(0, LIMIT, new OrderSearch()));
+    }
+
+    // V5 : DTO 직접 조회 1 + 1 (in 쿼리)
+    @Benchmark
+    public Object v5_dtoInQuery(SqlCounter counter) {
+        return measure(counter, status -> orderRepository.findOrderQueryDtoOptimization(0, LIMIT, new OrderSearch()));
+    }
+
+    // V6 : 주문 id 페이징 + 플랫 조인 row 를 주문 DTO 로 접기 (/api/v6/orders).
+    // 플랫 조인에 바로 limit 을 걸면 row 단위라 주문 수가 LIMIT 보다 적어진다
+    @Benchmark
+    public Object v6_flat(SqlCounter counter) {
+        return measure(counter, status -> orderRepository.findOrderQueryDtoFolded(0, LIMIT, new OrderSearch()));
+    }
+
+    private <T> T measure(SqlCounter counter, TransactionCallback<T> callback) {
+        long before = sqlStatementCounter.current();
+        T result = transactionTemplate.execute(callback);
+        counter.statements += sqlStatementCounter.current() - before;
+        counter.calls++;
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+package jpabook.jpashop.benchmark;
+
+import jpabook.jpashop.JpashopApplication;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.StockPolicy;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.service.StockService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 한 상품에 동시 주문이 몰릴 때 재고 차감 처리량 비교.
+ * DIRECT(item.stock_quantity 한 row) vs SHARDED(item_stock_shard N row) vs LEDGER(인메모리 원장)
+ *
+ * 스레드 수에 따른 처리량 곡선 : ./gradlew jmhJar 후
+ * java -cp build/libs/jpashop-0.0.1-SNAPSHOT-jmh.jar jpabook.jpashop.benchmark.StockContentionBenchmark
+ * 스레드 수마다 build/reports/jmh/stock-contention-{threads}t.json 으로 남긴다.
+ * 경합 곡선은 코어가 여럿인 호스트에서만 의미가 있다. 코어 하나에서는 스레드가 번갈아 돌 뿐이라 정책 간 차이보다 오차가 크다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StockContentionBenchmark {
+
+    @Param({"DIRECT", "SHARDED", "LEDGER"})
+    private StockPolicy policy;
+
+    private ConfigurableApplicationContext context;
+    private StockService stockService;
+    private OrderService orderService;
+    private TransactionTemplate transactionTemplate;
+    private Long itemId;
+    private Long memberId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(JpashopApplication.class)
+                .profiles("bench")
+                .web(WebApplicationType.NONE)
+                .run();
+
+        stockService = context.getBean(StockService.class);
+        orderService = context.getBean(OrderService.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        Member member = new Member();
+        member.setName("HOT MEMBER");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberId = context.getBean(MemberRepository.class).save(member).getId();
+
+        Book book = new Book();
+        book.setName("HOT ITEM");
+        book.setPrice(10000);
+        // release 벤치마크가 더해도 int 를 넘지 않도록 절반에서 시작
+        book.setStockQuantity(Integer.MAX_VALUE / 2);
+        itemId = context.getBean(ItemRepository.class).save(book).getId();
+        stockService.changePolicy(itemId, policy);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object reserve() {
+        return transactionTemplate.execute(status -> stockService.reserve(itemId, 1));
+    }
+
+    // 주문 한건 전체(재고 차감 + 주문 / 배송 insert). StockConcurrencyTest 가 로그로만 남기는 주문 처리량을 여기서 잰다
+    @Benchmark
+    public Long order() {
+        return orderService.order(memberId, itemId, 1);
+    }
+
+    // 주문 취소 경로. SHARDED 는 임의의 샤드 row 하나에 더한다
+    @Benchmark
+    public void release() {
+        transactionTemplate.execute(status -> {
+            stockService.release(itemId, 1);
+            return null;
+        });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 2, 4, 8, 16, 32, 64, 128}) {
+            Options options = new OptionsBuilder()
+                    .include(StockContentionBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .forks(1)
+                    .warmupIterations(2)
+                    .measurementIterations(3)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("build/reports/jmh/stock-contention-" + threads + "t.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -3,8 +3,15 @@ package jpabook.jpashop;
 import com.fasterxml.jackson.datatype.hibernate5.Hibernate5Module;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.util.ResourceUtils;
 
+import java.io.IOException;
+
+@EnableScheduling
 @SpringBootApplication
 public class JpashopApplication {
 
@@ -16,4 +23,20 @@ public class JpashopApplication {
 	public Hibernate5Module hibernate5Module() {
 		return new Hibernate5Module();
 	}
+
+	// hibernate-jcache 5.3 은 javax.cache.uri 를 그대로 Ehcache 에 URL 로 넘긴다. classpath: 는 실제 리소스 URI 로 바꿔 준다
+	@Bean
+	public HibernatePropertiesCustomizer jcacheConfigUriCustomizer() {
+		return properties -> {
+			Object uri = properties.get("hibernate.javax.cache.uri");
+			if (uri instanceof String && ((String) uri).startsWith(ResourceUtils.CLASSPATH_URL_PREFIX)) {
+				String path = ((String) uri).substring(ResourceUtils.CLASSPATH_URL_PREFIX.length());
+				try {
+					properties.put("hibernate.javax.cache.uri", new ClassPathResource(path).getURI().toString());
+				} catch (IOException e) {
+					throw new IllegalStateException("2차 캐시 설정 파일을 찾지 못했습니다: " + uri, e);
+				}
+			}
+		};
+	}
 }
@@ -0,0 +1,100 @@
+package jpabook.jpashop.api;
+
+import jpabook.jpashop.service.query.OrderSearchCache;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+@RequiredArgsConstructor
+@RestController
+public class CacheApiController {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final OrderSearchCache orderSearchCache;
+
+    /**
+     * 2차 캐시 region 별 hit / miss / put 통계
+     */
+    @GetMapping("/api/cache-stats")
+    public Result cacheStats() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        List<CacheRegionDto> regions = Arrays.stream(statistics.getSecondLevelCacheRegionNames())
+                .sorted()
+                // 쿼리 / timestamps region 은 엔티티 region 통계가 없다
+                .filter(name -> statistics.getDomainDataRegionStatistics(name) != null)
+                .map(name -> new CacheRegionDto(name, statistics.getDomainDataRegionStatistics(name)))
+                .collect(toList());
+
+        return new Result(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount(), regions);
+    }
+
+    /**
+     * 주문 검색 결과 캐시 통계
+     */
+    @GetMapping("/api/order-search-cache-stats")
+    public OrderSearchCacheDto orderSearchCacheStats() {
+        return new OrderSearchCacheDto(orderSearchCache);
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class Result {
+        private long hitCount;
+        private long missCount;
+        private List<CacheRegionDto> regions;
+    }
+
+    @Data
+    static class CacheRegionDto {
+        private String region;
+        private long hitCount;
+        private long missCount;
+        private long putCount;
+        private long elementCountInMemory;
+        private double hitRatio;
+
+        public CacheRegionDto(String region, CacheRegionStatistics statistics) {
+            this.region = region;
+            this.hitCount = statistics.getHitCount();
+            this.missCount = statistics.getMissCount();
+            this.putCount = statistics.getPutCount();
+            this.elementCountInMemory = statistics.getElementCountInMemory();
+            long lookups = hitCount + missCount;
+            this.hitRatio = lookups == 0 ? 0 : (double) hitCount / lookups;
+        }
+    }
+
+    @Data
+    static class OrderSearchCacheDto {
+        private int size;
+        private long hitCount;
+        private long missCount;
+        private long evictionCount;
+        private long expirationCount;
+        private long invalidationCount;
+        private double hitRatio;
+
+        public OrderSearchCacheDto(OrderSearchCache cache) {
+            this.size = cache.getSize();
+            this.hitCount = cache.getHitCount();
+            this.missCount = cache.getMissCount();
+            this.evictionCount = cache.getEvictionCount();
+            this.expirationCount = cache.getExpirationCount();
+            this.invalidationCount = cache.getInvalidationCount();
+            long lookups = hitCount + missCount;
+            this.hitRatio = lookups == 0 ? 0 : (double) hitCount / lookups;
+        }
+    }
+}
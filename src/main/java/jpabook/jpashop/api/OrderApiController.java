@@ -1,23 +1,39 @@
 package jpabook.jpashop.api;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jpabook.jpashop.domain.Address;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.domain.OrderItem;
 import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.repository.OrderCursor;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
-import jpabook.jpashop.repository.order.query.OrderFlatDto;
-import jpabook.jpashop.repository.order.query.OrderItemQueryDto;
 import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import jpabook.jpashop.service.BulkCancelResult;
+import jpabook.jpashop.service.OrderLine;
+import jpabook.jpashop.service.OrderService;
 import jpabook.jpashop.service.query.OrderQueryService;
+import jpabook.jpashop.service.query.OrderReadService;
+import jpabook.jpashop.service.query.OrderSearchCache;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.*;
@@ -28,6 +44,10 @@ public class OrderApiController {
 
     private final OrderRepository orderRepository;
     private final OrderQueryService orderQueryService;
+    private final OrderReadService orderReadService;
+    private final OrderSearchCache orderSearchCache;
+    private final OrderService orderService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping("/api/v1/orders")
     private List<Order> ordersV1() {
@@ -52,14 +72,15 @@ public class OrderApiController {
     }
 
     // OSIV 껐을 때 추천하는 방
-    @GetMapping("/api/v2/orders")
+    @GetMapping("/api/v2.1/orders")
     private List<jpabook.jpashop.service.query.OrderDto> ordersV2_OSIV() {
         return orderQueryService.ordersV2_OSIV();
     }
 
     @GetMapping("/api/v3/orders")
-    private List<OrderDto> ordersV3() {
-        List<Order> orders = orderRepository.findAllWithItemByQuerydsl(new OrderSearch());
+    private List<OrderDto> ordersV3(@ModelAttribute OrderSearch orderSearch) {
+        rejectHistory(orderSearch);
+        List<Order> orders = orderRepository.findAllWithItemByQuerydsl(orderSearch);
 
         return orders.stream()
                 .map(OrderDto::new)
@@ -68,9 +89,24 @@ public class OrderApiController {
 
     @GetMapping("/api/v3.1/orders")
     private List<OrderDto> ordersV3_page(
+            @ModelAttribute OrderSearch orderSearch,
             @RequestParam(value = "offset", defaultValue = "0") int offset,
             @RequestParam(value = "limit", defaultValue = "100") int limit) {
-        List<Order> orders = orderRepository.findAllPageWithMemberDeliveryByQuerydsl(offset, limit, new OrderSearch());
+        rejectHistory(orderSearch);
+        List<Order> orders = orderRepository.findAllPageWithMemberDeliveryByQuerydsl(offset, limit, orderSearch);
+
+        return orders.stream()
+                .map(OrderDto::new)
+                .collect(toList());
+    }
+
+    @GetMapping("/api/v3.2/orders")
+    private List<OrderDto> ordersV3_2_page(
+            @ModelAttribute OrderSearch orderSearch,
+            @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        rejectHistory(orderSearch);
+        List<Order> orders = orderRepository.findAllPageWithItemByQuerydsl(offset, limit, orderSearch);
 
         return orders.stream()
                 .map(OrderDto::new)
@@ -86,26 +122,217 @@ public class OrderApiController {
 
     @GetMapping("/api/v5/orders")
     private List<OrderQueryDto> ordersV5_page(
+            OrderSearch orderSearch,
             @RequestParam(value = "offset", defaultValue = "0") int offset,
             @RequestParam(value = "limit", defaultValue = "100") int limit) {
-        return orderRepository.findOrderQueryDtoOptimization(offset, limit, new OrderSearch());
+        return orderSearchCache.get("v5", orderSearch, offset, limit,
+                () -> orderRepository.findOrderQueryDtoOptimization(offset, limit, orderSearch));
     }
 
     @GetMapping("/api/v6/orders")
     private List<OrderQueryDto> ordersV6_page(
             @RequestParam(value = "offset", defaultValue = "0") int offset,
             @RequestParam(value = "limit", defaultValue = "100") int limit) {
-        List<OrderFlatDto> flats = orderRepository.findOrderQueryDtoFlat(offset, limit, new OrderSearch());
-
-        return flats.stream()
-                .collect(groupingBy(o ->
-                                new OrderQueryDto(o.getOrderId(), o.getName(), o.getOrderDate(), o.getOrderStatus(), o.getAddress()),
-                        mapping(o -> new OrderItemQueryDto(o.getOrderId(), o.getItemName(), o.getOrderPrice(), o.getCount()), toList())
-                ))
-                .entrySet().stream()
-                .map(e -> new OrderQueryDto(
-                        e.getKey().getOrderId(), e.getKey().getName(), e.getKey().getOrderDate(), e.getKey().getOrderStatus(), e.getKey().getAddress(), e.getValue()))
+        return orderRepository.findOrderQueryDtoFolded(offset, limit, new OrderSearch());
+    }
+
+    // v6 와 같은 조회/응답 모양. row 를 DTO 로 모으지 않고 JsonGenerator 로 응답에 바로 쓴다
+    @GetMapping(value = "/api/v7/orders", produces = "application/json")
+    public void ordersV7_stream(
+            OrderSearch orderSearch,
+            @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            HttpServletResponse response) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        try (JsonGenerator generator = OrderJsonWriter.createGenerator(objectMapper, response.getOutputStream())) {
+            OrderJsonWriter writer = new OrderJsonWriter(generator, true);
+            writer.start();
+            orderQueryService.streamOrders(orderSearch, offset, limit, writer);
+            writer.end();
+        }
+    }
+
+    // 운영용 : 페이지 크기와 관측된 주문 형태/지연시간에 따라 v3.2 / v3.1 / v5 / v6 중 하나를 고른다
+    @GetMapping("/api/orders")
+    private List<OrderQueryDto> orders(
+            @ModelAttribute OrderSearch orderSearch,
+            @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return orderReadService.findOrders(orderSearch, offset, limit);
+    }
+
+    // 장바구니 주문. 같은 상품이 여러 줄이면 수량을 합친다
+    @PostMapping("/api/orders")
+    public CreateOrderResponse orderCart(@RequestBody @Valid CartOrderRequest request) {
+        Map<Long, Integer> itemCounts = request.getLines().stream()
+                .collect(toMap(CartLine::getItemId, CartLine::getCount, Integer::sum));
+
+        Long orderId = orderService.orderCart(request.getMemberId(), itemCounts);
+        return new CreateOrderResponse(orderId);
+    }
+
+    @PostMapping("/api/orders/bulk")
+    public BulkOrderResponse ingestOrders(@RequestBody @Valid BulkOrderRequest request) {
+        List<OrderLine> lines = request.getOrders().stream()
+                .map(o -> new OrderLine(o.getMemberId(), o.getItemId(), o.getCount()))
+                .collect(toList());
+
+        return new BulkOrderResponse(orderService.ingest(lines));
+    }
+
+    // 대량 취소 (운영용). 배송완료 / 이미 취소 / 없는 주문은 건너뛰고 결과에 id 로 알려준다
+    @PostMapping("/api/orders/cancel")
+    public BulkCancelResult cancelOrders(@RequestBody @Valid BulkCancelRequest request) {
+        return orderService.cancelOrders(request.getOrderIds());
+    }
+
+    // keyset 페이징 : ?cursor= (빈 값이면 첫 페이지), 응답의 nextCursor 로 다음 페이지 요청.
+    // 검색조건(memberName, orderStatus)은 다음 페이지 요청에도 같이 보내야 한다
+    @GetMapping(value = "/api/v3.1/orders", params = "cursor")
+    private CursorResult<OrderDto> ordersV3_cursor(
+            @ModelAttribute OrderSearch orderSearch,
+            @RequestParam("cursor") String cursor,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        rejectHistory(orderSearch);
+        List<Order> orders = orderRepository.findAllPageWithMemberDeliveryByQuerydsl(decode(cursor), limit, orderSearch);
+
+        List<OrderDto> data = orders.stream()
+                .map(OrderDto::new)
                 .collect(toList());
+        Order last = orders.isEmpty() ? null : orders.get(orders.size() - 1);
+        return new CursorResult<>(data, nextCursor(orders.size() == limit, last == null ? null : new OrderCursor(last.getOrderDate(), last.getId())));
+    }
+
+    @GetMapping(value = "/api/v5/orders", params = "cursor")
+    private CursorResult<OrderQueryDto> ordersV5_cursor(
+            @ModelAttribute OrderSearch orderSearch,
+            @RequestParam("cursor") String cursor,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        rejectHistory(orderSearch);
+        List<OrderQueryDto> orders = orderRepository.findOrderQueryDtoOptimization(decode(cursor), limit, orderSearch);
+
+        return new CursorResult<>(orders, nextCursor(orders.size() == limit, lastCursor(orders)));
+    }
+
+    @GetMapping(value = "/api/v6/orders", params = "cursor")
+    private CursorResult<OrderQueryDto> ordersV6_cursor(
+            @ModelAttribute OrderSearch orderSearch,
+            @RequestParam("cursor") String cursor,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        rejectHistory(orderSearch);
+        // 주문 단위로 페이징하므로 아이템이 많은 주문도 잘리지 않는다
+        List<OrderQueryDto> orders = orderRepository.findOrderQueryDtoFolded(decode(cursor), limit, orderSearch);
+
+        return new CursorResult<>(orders, nextCursor(orders.size() == limit, lastCursor(orders)));
+    }
+
+    // 검색 조건에 맞는 전체 주문을 NDJSON(한 줄에 주문 하나)으로 내려준다. 전체를 List 로 올리지 않고 조립되는 대로 바로 쓴다
+    @GetMapping(value = "/api/orders/export", produces = "application/x-ndjson")
+    public void exportOrders(@ModelAttribute OrderSearch orderSearch, HttpServletResponse response) throws IOException {
+        rejectHistory(orderSearch);
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            // root value 사이 기본 구분자(공백)를 끄고 줄바꿈을 직접 쓴다. 끄지 않으면 두번째 줄부터 공백으로 시작한다
+            generator.setRootValueSeparator(null);
+            orderQueryService.exportOrders(orderSearch, order -> {
+                try {
+                    objectMapper.writeValue(generator, order);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    // 잘못된 커서는 클라이언트 오류
+    private OrderCursor decode(String cursor) {
+        try {
+            return OrderCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    // 엔티티 조회 / keyset 페이징 / export 는 hot 테이블만 읽는다. history 를 무시하면 이력 대신 hot 주문이 나가므로 거절한다
+    private void rejectHistory(OrderSearch orderSearch) {
+        if (orderSearch.isHistory()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "history 검색은 /api/orders, /api/v5/orders(offset), /api/v7/orders, /api/v5~v6/simple-orders 에서만 지원합니다");
+        }
+    }
+
+    private OrderCursor lastCursor(List<OrderQueryDto> orders) {
+        if (orders.isEmpty()) {
+            return null;
+        }
+        OrderQueryDto last = orders.get(orders.size() - 1);
+        return new OrderCursor(last.getOrderDate(), last.getOrderId());
+    }
+
+    private String nextCursor(boolean hasNext, OrderCursor last) {
+        return hasNext && last != null ? last.encode() : null;
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class CursorResult<T> {
+        private List<T> data;
+        private String nextCursor;
+    }
+
+    @Data
+    static class CartOrderRequest {
+        @NotNull
+        private Long memberId;
+        @NotEmpty @Valid
+        private List<CartLine> lines;
+    }
+
+    @Data
+    static class CartLine {
+        @NotNull
+        private Long itemId;
+        @Positive
+        private int count;
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class CreateOrderResponse {
+        private Long orderId;
+    }
+
+    @Data
+    static class BulkOrderRequest {
+        @NotEmpty @Valid
+        private List<BulkOrderLine> orders;
+    }
+
+    @Data
+    static class BulkOrderLine {
+        @NotNull
+        private Long memberId;
+        @NotNull
+        private Long itemId;
+        @Positive
+        private int count;
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class BulkOrderResponse {
+        private int count;
+    }
+
+    @Data
+    static class BulkCancelRequest {
+        @NotEmpty @Size(max = 10000)
+        private List<@NotNull Long> orderIds;
     }
 
     @Data
@@ -0,0 +1,23 @@
+package jpabook.jpashop.api;
+
+import jpabook.jpashop.service.OrderArchiver;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RequiredArgsConstructor
+@RestController
+public class OrderArchiveApiController {
+
+    private final OrderArchiver orderArchiver;
+
+    /**
+     * hot / archive 테이블별 row 수
+     */
+    @GetMapping("/api/order-archive-stats")
+    public Map<String, Long> orderArchiveStats() {
+        return orderArchiver.tableSizes();
+    }
+}
@@ -0,0 +1,101 @@
+package jpabook.jpashop.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.repository.order.query.OrderRowHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+
+/**
+ * 조회 row 를 OrderQueryDto 와 같은 모양의 JSON 배열로 바로 쓴다.
+ *
+ * DTO / List 를 만들지 않고 JsonGenerator 버퍼를 거쳐 응답 스트림으로 나가므로
+ * 응답 크기와 상관없이 붙잡고 있는 메모리가 일정하다.
+ * withItems 가 false 면 orderItems 필드 없이 SimpleOrderQueryDto 모양이 된다.
+ * generator 는 createGenerator 로 만든다. 도중에 실패하면 열린 배열 / 객체를 닫지 않아서
+ * 클라이언트가 잘린 목록을 정상 응답으로 받지 않고 깨진 JSON (또는 끊긴 응답) 으로 알아챈다.
+ */
+class OrderJsonWriter implements OrderRowHandler {
+
+    private final JsonGenerator generator;
+    private final boolean withItems;
+
+    OrderJsonWriter(JsonGenerator generator, boolean withItems) {
+        this.generator = generator;
+        this.withItems = withItems;
+    }
+
+    static JsonGenerator createGenerator(ObjectMapper objectMapper, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        return generator;
+    }
+
+    void start() throws IOException {
+        generator.writeStartArray();
+    }
+
+    void end() throws IOException {
+        generator.writeEndArray();
+    }
+
+    @Override
+    public void order(Long orderId, String name, LocalDateTime orderDate, OrderStatus orderStatus, Address address) {
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField("orderId", orderId);
+            generator.writeStringField("name", name);
+            // 날짜 형식은 ObjectMapper 설정(JavaTimeModule)을 그대로 따른다
+            generator.writeObjectField("orderDate", orderDate);
+            generator.writeStringField("orderStatus", orderStatus == null ? null : orderStatus.name());
+            writeAddress(address);
+            if (withItems) {
+                generator.writeArrayFieldStart("orderItems");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void orderItem(String itemName, int orderPrice, int count) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("itemName", itemName);
+            generator.writeNumberField("orderPrice", orderPrice);
+            generator.writeNumberField("count", count);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void endOrder() {
+        try {
+            if (withItems) {
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeAddress(Address address) throws IOException {
+        if (address == null) {
+            generator.writeNullField("address");
+            return;
+        }
+        generator.writeObjectFieldStart("address");
+        generator.writeStringField("city", address.getCity());
+        generator.writeStringField("street", address.getStreet());
+        generator.writeStringField("zipcode", address.getZipcode());
+        generator.writeEndObject();
+    }
+}
@@ -1,16 +1,25 @@
 package jpabook.jpashop.api;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jpabook.jpashop.domain.Address;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.domain.OrderStatus;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
 import jpabook.jpashop.repository.order.query.SimpleOrderQueryDto;
+import jpabook.jpashop.service.query.OrderQueryService;
+import jpabook.jpashop.service.query.OrderSearchCache;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -25,6 +34,9 @@ import java.util.stream.Collectors;
 public class OrderSimpleApiController {
 
     private final OrderRepository orderRepository;
+    private final OrderSearchCache orderSearchCache;
+    private final OrderQueryService orderQueryService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping("/api/v1/simple-orders")
     public List<Order> orderV1() {
@@ -57,9 +69,46 @@ public class OrderSimpleApiController {
     }
 
     @GetMapping("/api/v4/simple-orders")
-    public List<SimpleOrderQueryDto> orderV4() {
-        return orderRepository.findAllDtoWithMemberDeliveryByQuerydsl(new OrderSearch());
+    public List<SimpleOrderQueryDto> orderV4(OrderSearch orderSearch) {
+        rejectHistory(orderSearch);
+        // 페이징 없는 조회라 offset / limit 은 0 으로 키를 잡는다
+        return orderSearchCache.get("simple-v4", orderSearch, 0, 0,
+                () -> orderRepository.findAllDtoWithMemberDeliveryByQuerydsl(orderSearch));
+    }
+
+    // order_summary 읽기 모델. orders / member / delivery 조인 없음
+    @GetMapping("/api/v5/simple-orders")
+    public List<SimpleOrderQueryDto> orderV5(
+            OrderSearch orderSearch,
+            @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return orderRepository.findAllSummaryByQuerydsl(offset, limit, orderSearch);
+    }
+
+    // v5 와 같은 조회. DTO 목록 없이 order_summary row 를 응답 스트림에 바로 쓴다
+    @GetMapping(value = "/api/v6/simple-orders", produces = "application/json")
+    public void orderV6(
+            OrderSearch orderSearch,
+            @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            HttpServletResponse response) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
 
+        try (JsonGenerator generator = OrderJsonWriter.createGenerator(objectMapper, response.getOutputStream())) {
+            OrderJsonWriter writer = new OrderJsonWriter(generator, false);
+            writer.start();
+            orderQueryService.streamSimpleOrders(orderSearch, offset, limit, writer);
+            writer.end();
+        }
+    }
+
+    // v4 는 hot 테이블만 조인한다. history 를 무시하면 hot 주문이 이력 키로 캐시까지 되므로 거절한다
+    private void rejectHistory(OrderSearch orderSearch) {
+        if (orderSearch.isHistory()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "history 검색은 /api/v5/orders(offset), /api/v7/orders, /api/v5~v6/simple-orders 에서만 지원합니다");
+        }
     }
 
     @Data
@@ -1,6 +1,7 @@
 package jpabook.jpashop.controller;
 
 import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
 import jpabook.jpashop.service.ItemService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
@@ -10,6 +11,8 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 
+import java.util.List;
+
 @Controller
 @RequiredArgsConstructor
 public class ItemController {
@@ -38,7 +41,9 @@ public class ItemController {
 
     @GetMapping("/items")
     public String list(Model model) {
-        model.addAttribute("items", itemService.findItems());
+        List<Item> items = itemService.findItems();
+        model.addAttribute("items", items);
+        model.addAttribute("stocks", itemService.availableStocks(items));
         return "items/itemList";
     }
 
@@ -48,6 +53,8 @@ public class ItemController {
 
         BookForm form = new BookForm();
         form.update(book);
+        // SHARDED / LEDGER 상품은 item.stock_quantity 가 판매 가능 재고가 아니다
+        form.setStockQuantity(itemService.availableStock(itemId));
 
         model.addAttribute("form", form);
         return "items/updateItemForm";
@@ -8,12 +8,14 @@ import jpabook.jpashop.service.ItemService;
 import jpabook.jpashop.service.MemberService;
 import jpabook.jpashop.service.OrderService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
 
@@ -45,6 +47,10 @@ public class OrderController {
 
     @GetMapping("/orders")
     public String list(@ModelAttribute("orderSearch") OrderSearch orderSearch, Model model) {
+        // 주문 목록 화면은 hot 테이블만 읽는다. history 를 무시하면 hot 주문이 이력처럼 보이므로 거절한다
+        if (orderSearch.isHistory()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "주문 목록 화면은 history 검색을 지원하지 않습니다");
+        }
         model.addAttribute("orders", orderService.findOrders(orderSearch));
 
         return "orders/orderList";
@@ -0,0 +1,101 @@
+package jpabook.jpashop.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * read-your-writes : 쓰기가 커밋된 뒤 window 동안은 같은 클라이언트의 읽기도 primary 로 보낸다.
+ *
+ * 세션은 쿠키로 구분한다. 쓰기가 커밋되면 "이 시각까지 primary" 를 쿠키로 내려주고,
+ * 다음 요청에서 그 시각이 안 지났으면 ReplicaRoutingDataSource 가 readOnly 트랜잭션도 primary 로 보낸다.
+ * window 가 0 이면 (기본) 끈다. 쿠키를 보내지 않는 클라이언트는 같은 요청 안에서만 보장된다.
+ */
+@Component
+@ConditionalOnProperty(prefix = "jpashop.datasource.replica", name = "url")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE_NAME = "jpashop-primary-until";
+
+    private static final ThreadLocal<Session> CURRENT = new ThreadLocal<>();
+
+    private final long windowMillis;
+
+    public ReadYourWritesFilter(@Value("${jpashop.datasource.replica.read-your-writes-ms:0}") long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (windowMillis <= 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        CURRENT.set(new Session(pinnedUntil(request), response, windowMillis));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    static boolean isPinned() {
+        Session session = CURRENT.get();
+        return session != null && System.currentTimeMillis() < session.pinnedUntil;
+    }
+
+    // 쓰기 트랜잭션 커밋 후. 응답이 이미 나가기 시작했으면 쿠키는 못 붙이고 이 요청 안에서만 고정된다
+    static void written() {
+        Session session = CURRENT.get();
+        if (session == null) {
+            return;
+        }
+        session.pinnedUntil = System.currentTimeMillis() + session.windowMillis;
+        if (!session.response.isCommitted()) {
+            Cookie cookie = new Cookie(COOKIE_NAME, Long.toString(session.pinnedUntil));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, (session.windowMillis + 999) / 1000));
+            session.response.addCookie(cookie);
+        }
+    }
+
+    // 조작된 쿠키로 window 보다 오래 고정되지 않도록 지금 + window 로 자른다
+    private long pinnedUntil(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return 0;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName())) {
+                try {
+                    return Math.min(Long.parseLong(cookie.getValue()), System.currentTimeMillis() + windowMillis);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static class Session {
+        private long pinnedUntil;
+        private final HttpServletResponse response;
+        private final long windowMillis;
+
+        Session(long pinnedUntil, HttpServletResponse response, long windowMillis) {
+            this.pinnedUntil = pinnedUntil;
+            this.response = response;
+            this.windowMillis = windowMillis;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package jpabook.jpashop.datasource;
+
+import com.github.gavlyukovskiy.boot.jdbc.decorator.DataSourceDecorator;
+import com.github.gavlyukovskiy.boot.jdbc.decorator.DataSourceDecoratorProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * jpashop.datasource.replica.url 이 있으면 spring.datasource(primary) + replica 두 풀을 만들고
+ * readOnly 트랜잭션은 replica, 나머지는 primary 로 보낸다. 없으면 Boot 기본 DataSource 하나만 쓴다.
+ *
+ * 풀 별 hikaricp.* 지표(pool=primary / replica)와 jpashop.datasource.route 카운터로 읽기가 replica 로 빠지는 걸 볼 수 있다.
+ *
+ * p6spy 는 커넥션을 얻자마자 getMetaData() 를 불러 LazyConnectionDataSourceProxy 가 readOnly 표시 전에 대상을 고르게 만든다.
+ * 그래서 바깥 dataSource 빈은 decorator 대상에서 빼고 (decorator.datasource.exclude-beans) 두 풀을 각각 감싼다.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "jpashop.datasource.replica", name = "url")
+public class ReplicaDataSourceConfig {
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties, MeterRegistry meterRegistry,
+                                 DataSourceDecoratorProperties decoratorProperties,
+                                 ObjectProvider<DataSourceDecorator> decorators,
+                                 @Value("${jpashop.datasource.replica.url}") String replicaUrl,
+                                 @Value("${jpashop.datasource.replica.username:}") String replicaUsername,
+                                 @Value("${jpashop.datasource.replica.password:}") String replicaPassword) {
+        if (decoratorProperties.isEnabled() && !decoratorProperties.getExcludeBeans().contains("dataSource")) {
+            throw new IllegalStateException("replica 라우팅에는 decorator.datasource.exclude-beans=dataSource 가 필요합니다");
+        }
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        primary.setMetricRegistry(meterRegistry);
+        pools.add(primary);
+
+        HikariDataSource replica = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .build();
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+        replica.setMetricRegistry(meterRegistry);
+        pools.add(replica);
+
+        List<DataSourceDecorator> decoratorList = decorators.orderedStream().collect(Collectors.toList());
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(
+                decorate("primary", primary, decoratorList), decorate("replica", replica, decoratorList), meterRegistry);
+        routing.afterPropertiesSet();
+        // 트랜잭션 매니저는 readOnly 표시보다 커넥션을 먼저 얻는다 -> 실제 커넥션은 첫 SQL 때 골라서 얻는다
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    private static DataSource decorate(String name, DataSource dataSource, List<DataSourceDecorator> decorators) {
+        DataSource decorated = dataSource;
+        for (DataSourceDecorator decorator : decorators) {
+            decorated = decorator.decorate(name, decorated);
+        }
+        return decorated;
+    }
+
+    @PreDestroy
+    public void close() {
+        pools.forEach(HikariDataSource::close);
+    }
+}
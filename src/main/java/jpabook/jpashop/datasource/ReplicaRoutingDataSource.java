@@ -0,0 +1,97 @@
+package jpabook.jpashop.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 현재 트랜잭션이 readOnly 면 replica, 아니면 primary 커넥션을 준다.
+ *
+ * - 트랜잭션 밖 (스키마 생성, 스케줄러의 JDBC 등) 은 primary.
+ * - 방금 쓰기를 한 세션이면 (ReadYourWritesFilter) readOnly 라도 primary 에서 읽는다.
+ * - readFromPrimary 안에서 시작한 readOnly 트랜잭션도 primary 에서 읽는다 (캐시를 채우는 조회).
+ * - replica 는 복제 지연만큼 늦을 수 있다. 그 사이 읽은 값이 2차 캐시에 들어가면 TTL 동안 이전 값이 보일 수 있다.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Target {PRIMARY, REPLICA}
+
+    private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+
+    private final Counter readWrite;
+    private final Counter readOnly;
+    private final Counter readOnlyPinned;
+    private final Counter noTransaction;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, MeterRegistry meterRegistry) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(Target.PRIMARY, primary);
+        targets.put(Target.REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+
+        this.readWrite = counter(meterRegistry, Target.PRIMARY, "read-write");
+        this.readOnly = counter(meterRegistry, Target.REPLICA, "read-only");
+        this.readOnlyPinned = counter(meterRegistry, Target.PRIMARY, "read-only-pinned");
+        this.noTransaction = counter(meterRegistry, Target.PRIMARY, "none");
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            noTransaction.increment();
+            return Target.PRIMARY;
+        }
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (ReadYourWritesFilter.isPinned() || PRIMARY_READS.get() != null) {
+                readOnlyPinned.increment();
+                return Target.PRIMARY;
+            }
+            readOnly.increment();
+            return Target.REPLICA;
+        }
+
+        readWrite.increment();
+        // 커밋된 뒤부터 이 세션의 읽기를 잠시 primary 에 고정한다
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    ReadYourWritesFilter.written();
+                }
+            });
+        }
+        return Target.PRIMARY;
+    }
+
+    /**
+     * reader 가 여는 readOnly 트랜잭션을 primary 로 보낸다. 이미 커넥션을 얻은 바깥 트랜잭션에는 영향이 없다.
+     * replica 설정이 없으면 (이 DataSource 가 없으면) 아무 일도 하지 않는다.
+     */
+    public static <T> T readFromPrimary(Supplier<T> reader) {
+        if (PRIMARY_READS.get() != null) {
+            return reader.get();
+        }
+        PRIMARY_READS.set(Boolean.TRUE);
+        try {
+            return reader.get();
+        } finally {
+            PRIMARY_READS.remove();
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, Target target, String transaction) {
+        return Counter.builder("jpashop.datasource.route")
+                .description("커넥션을 얻은 대상 DataSource")
+                .tag("target", target.name().toLowerCase())
+                .tag("transaction", transaction)
+                .register(meterRegistry);
+    }
+}
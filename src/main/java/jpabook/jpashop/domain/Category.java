@@ -3,6 +3,8 @@ package jpabook.jpashop.domain;
 import jpabook.jpashop.domain.item.Item;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.ArrayList;
@@ -11,10 +13,13 @@ import java.util.List;
 import static javax.persistence.FetchType.*;
 
 @Getter @Setter
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity
 public class Category {
 
-    @Id @GeneratedValue
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "category_seq_generator")
+    @SequenceGenerator(name = "category_seq_generator", sequenceName = "category_seq", allocationSize = 50)
     @Column(name = "category_id")
     private Long id;
 
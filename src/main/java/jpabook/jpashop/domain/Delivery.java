@@ -12,7 +12,9 @@ import static javax.persistence.FetchType.*;
 @Entity
 public class Delivery {
 
-    @Id @GeneratedValue
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "delivery_seq_generator")
+    @SequenceGenerator(name = "delivery_seq_generator", sequenceName = "delivery_seq", allocationSize = 1000)
     @Column(name = "delivery_id")
     private Long id;
 
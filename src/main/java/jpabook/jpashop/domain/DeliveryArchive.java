@@ -0,0 +1,27 @@
+package jpabook.jpashop.domain;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+
+// delivery 의 cold 테이블. OrderArchive 참고
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Immutable
+@Table(name = "delivery_archive")
+@Entity
+public class DeliveryArchive {
+
+    @Id
+    @Column(name = "delivery_id")
+    private Long deliveryId;
+
+    @Embedded
+    private Address address;
+
+    @Enumerated(EnumType.STRING)
+    private DeliveryStatus status;
+}
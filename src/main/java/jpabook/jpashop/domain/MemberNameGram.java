@@ -0,0 +1,54 @@
+package jpabook.jpashop.domain;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 회원명 부분일치 검색용 n-gram 역색인. (gram, member_id) 가 PK 라 gram 으로 바로 회원 id 를 찾는다.
+ * member insert / update / delete 때 MemberNameGramIndexer 가 같이 갱신한다.
+ *
+ * 한글 이름은 2~3 글자가 대부분이라 trigram 이 아니라 bigram 을 쓴다. 1 글자 검색은 색인을 쓰지 않는다.
+ */
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@IdClass(MemberNameGram.Key.class)
+@Table(name = "member_name_gram", indexes = @Index(name = "idx_member_name_gram_member", columnList = "member_id"))
+@Entity
+public class MemberNameGram {
+
+    public static final int GRAM_SIZE = 2;
+
+    @Id
+    @Column(length = GRAM_SIZE)
+    private String gram;
+
+    @Id
+    @Column(name = "member_id")
+    private Long memberId;
+
+    // 중복 gram 은 한번만
+    public static Set<String> gramsOf(String name) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (name == null) {
+            return grams;
+        }
+        for (int i = 0; i + GRAM_SIZE <= name.length(); i++) {
+            grams.add(name.substring(i, i + GRAM_SIZE));
+        }
+        return grams;
+    }
+
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private String gram;
+        private Long memberId;
+    }
+}
@@ -1,6 +1,7 @@
 package jpabook.jpashop.domain;
 
 import lombok.*;
+import org.hibernate.Hibernate;
 import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
@@ -12,12 +13,13 @@ import static javax.persistence.FetchType.LAZY;
 
 @Getter @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
-@Table(name = "orders")
+@Table(name = "orders", indexes = @Index(name = "idx_orders_order_date_id", columnList = "order_date, order_id"))
 @Entity
 public class Order {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq_generator")
+    @SequenceGenerator(name = "orders_seq_generator", sequenceName = "orders_seq", allocationSize = 1000)
     @Column(name = "order_id")
     private Long id;
 
@@ -33,14 +35,19 @@ public class Order {
     @JoinColumn(name = "delivery_id")
     private Delivery delivery;
 
+    @Column(name = "order_date")
     private LocalDateTime orderDate;
 
     @Enumerated(EnumType.STRING)
     private OrderStatus status;
 
+    // 회원의 주문 목록이 아직 로딩되지 않았다면 건드리지 않는다.
+    // 주문 한건 만들자고 회원의 전체 주문 이력을 읽어오면 주문 비용이 이력 길이에 비례하게 된다
     public void setMember(Member member) {
         this.member = member;
-        member.getOrders().add(this);
+        if (Hibernate.isInitialized(member.getOrders())) {
+            member.getOrders().add(this);
+        }
     }
 
     public void addOrderItem(OrderItem orderItem) {
@@ -67,14 +74,19 @@ public class Order {
     }
 
     public void cancel() {
+        markCanceled();
+        for (OrderItem orderItem : orderItems) {
+            orderItem.cancel();
+        }
+    }
+
+    // 재고 복구는 호출하는 쪽에서 처리하는 경우
+    public void markCanceled() {
         if (delivery.getStatus() == DeliveryStatus.COMP) {
             throw new IllegalStateException("이미 배송완료된 상품은 취소가 불가능합니다.");
         }
 
         this.setStatus(OrderStatus.CANCEL);
-        for (OrderItem orderItem : orderItems) {
-            orderItem.cancel();
-        }
     }
 
     public int getTotalPrice() {
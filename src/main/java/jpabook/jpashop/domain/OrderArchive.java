@@ -0,0 +1,41 @@
+package jpabook.jpashop.domain;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 오래된 / 취소된 주문을 옮겨두는 cold 테이블. 컬럼은 orders 와 같고 연관관계 대신 id 만 들고 있다.
+ * OrderArchiver 가 JDBC insert-select 로만 채운다. history 검색(OrderSearch.history)일 때만 읽는다.
+ */
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Immutable
+@Table(name = "orders_archive", indexes = {
+        @Index(name = "idx_orders_archive_order_date_id", columnList = "order_date, order_id"),
+        @Index(name = "idx_orders_archive_member", columnList = "member_id")})
+@Entity
+public class OrderArchive {
+
+    @Id
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "member_id")
+    private Long memberId;
+
+    @Column(name = "delivery_id")
+    private Long deliveryId;
+
+    @Column(name = "order_date")
+    private LocalDateTime orderDate;
+
+    @Enumerated(EnumType.STRING)
+    private OrderStatus status;
+
+    private LocalDateTime archivedAt;
+}
@@ -16,7 +16,9 @@ import static javax.persistence.FetchType.*;
 @Entity
 public class OrderItem {
 
-    @Id @GeneratedValue
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_item_seq_generator")
+    @SequenceGenerator(name = "order_item_seq_generator", sequenceName = "order_item_seq", allocationSize = 1000)
     @Column(name = "order_item_id")
     private Long id;
 
@@ -42,6 +44,16 @@ public class OrderItem {
         return orderItem;
     }
 
+    // 재고는 ItemRepository.decreaseStock() 으로 이미 차감된 경우
+    public static OrderItem createReservedOrderItem(Item item, int orderPrice, int count) {
+        OrderItem orderItem = new OrderItem();
+        orderItem.setItem(item);
+        orderItem.setOrderPrice(orderPrice);
+        orderItem.setCount(count);
+
+        return orderItem;
+    }
+
     public void cancel() {
         item.addStock(count);
     }
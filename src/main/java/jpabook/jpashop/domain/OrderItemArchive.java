@@ -0,0 +1,30 @@
+package jpabook.jpashop.domain;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+
+// order_item 의 cold 테이블. OrderArchive 참고
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Immutable
+@Table(name = "order_item_archive", indexes = @Index(name = "idx_order_item_archive_order", columnList = "orders_id"))
+@Entity
+public class OrderItemArchive {
+
+    @Id
+    @Column(name = "order_item_id")
+    private Long orderItemId;
+
+    @Column(name = "orders_id")
+    private Long orderId;
+
+    @Column(name = "item_id")
+    private Long itemId;
+
+    private int orderPrice;
+    private int count;
+}
@@ -0,0 +1,40 @@
+package jpabook.jpashop.domain;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 주문 목록(simple-orders) 조회 전용 비정규화 테이블. orders + member + delivery 를 조인하지 않고 한 테이블에서 읽는다.
+ * 원본이 바뀌는 트랜잭션 안에서 OrderSummaryProjector 가 같이 갱신한다. 직접 수정하지 않는다.
+ */
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Table(name = "order_summary", indexes = {
+        @Index(name = "idx_order_summary_order_date_id", columnList = "order_date, order_id"),
+        @Index(name = "idx_order_summary_member", columnList = "member_id")})
+@Entity
+public class OrderSummary {
+
+    // orders.order_id 를 그대로 쓴다
+    @Id
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "member_id")
+    private Long memberId;
+
+    private String memberName;
+
+    @Column(name = "order_date")
+    private LocalDateTime orderDate;
+
+    @Enumerated(EnumType.STRING)
+    private OrderStatus status;
+
+    @Embedded
+    private Address address;
+}
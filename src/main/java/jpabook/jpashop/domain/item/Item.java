@@ -4,6 +4,9 @@ import jpabook.jpashop.domain.Category;
 import jpabook.jpashop.exception.NotEnoughStockException;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 import java.util.ArrayList;
@@ -12,10 +15,16 @@ import java.util.List;
 @Getter @Setter
 @DiscriminatorColumn(name = "dtype")
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+// stock_quantity 는 조건부 update / 원장 flush 가 JDBC 로 바꾼다. 변경감지가 전체 컬럼을 쓰면
+// 로딩 시점의 재고로 그 사이 커밋된 차감을 덮어쓰므로 바뀐 컬럼만 update 한다
+@DynamicUpdate
 @Entity
 public abstract class Item {
 
-    @Id @GeneratedValue
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_seq_generator")
+    @SequenceGenerator(name = "item_seq_generator", sequenceName = "item_seq", allocationSize = 50)
     @Column(name = "item_id")
     private Long id;
 
@@ -23,6 +32,10 @@ public abstract class Item {
     private int price;
     private int stockQuantity;
 
+    @Enumerated(EnumType.STRING)
+    private StockPolicy stockPolicy = StockPolicy.DIRECT;
+
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @ManyToMany(mappedBy = "items")
     private List<Category> categories = new ArrayList<>();
 
@@ -38,6 +51,12 @@ public abstract class Item {
         this.stockQuantity -= quantity;
     }
 
+    // 재고는 건드리지 않는다. @DynamicUpdate 라 name / price 만 update 된다
+    public void rename(String name, int price) {
+        this.name = name;
+        this.price = price;
+    }
+
     public void update(String name, int price, int stockQuantity) {
         this.name = name;
         this.price = price;
@@ -0,0 +1,43 @@
+package jpabook.jpashop.domain.item;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * StockPolicy.SHARDED 상품의 재고 조각. 상품 재고 = sum(quantity)
+ * 동시 주문이 한 row 의 락을 두고 줄서지 않도록 N 개 row 로 나눈다.
+ */
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Table(name = "item_stock_shard",
+        uniqueConstraints = @UniqueConstraint(name = "uk_item_stock_shard", columnNames = {"item_id", "shard_no"}))
+@Entity
+public class ItemStockShard {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_stock_shard_seq_generator")
+    @SequenceGenerator(name = "item_stock_shard_seq_generator", sequenceName = "item_stock_shard_seq", allocationSize = 50)
+    @Column(name = "item_stock_shard_id")
+    private Long id;
+
+    @Column(name = "item_id", nullable = false)
+    private Long itemId;
+
+    @Column(name = "shard_no", nullable = false)
+    private int shardNo;
+
+    private int quantity;
+
+    public ItemStockShard(Long itemId, int shardNo, int quantity) {
+        this.itemId = itemId;
+        this.shardNo = shardNo;
+        this.quantity = quantity;
+    }
+
+    public void removeQuantity(int quantity) {
+        this.quantity -= quantity;
+    }
+}
@@ -0,0 +1,35 @@
+package jpabook.jpashop.domain.item;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * 재고 원장 저널. 아직 item.stock_quantity 에 반영되지 않은 재고 증감분.
+ * 주문과 같은 트랜잭션에 insert 만 하므로 item row 락을 잡지 않는다.
+ * 실제 재고 = item.stock_quantity + sum(delta)
+ */
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Table(indexes = @Index(name = "idx_stock_ledger_entry_item", columnList = "item_id"))
+@Entity
+public class StockLedgerEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_ledger_entry_seq_generator")
+    @SequenceGenerator(name = "stock_ledger_entry_seq_generator", sequenceName = "stock_ledger_entry_seq", allocationSize = 1000)
+    @Column(name = "stock_ledger_entry_id")
+    private Long id;
+
+    @Column(name = "item_id", nullable = false)
+    private Long itemId;
+
+    private int delta;
+
+    public StockLedgerEntry(Long itemId, int delta) {
+        this.itemId = itemId;
+        this.delta = delta;
+    }
+}
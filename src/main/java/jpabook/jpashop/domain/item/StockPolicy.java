@@ -0,0 +1,7 @@
+package jpabook.jpashop.domain.item;
+
+public enum StockPolicy {
+    DIRECT,  // item.stock_quantity 조건부 update
+    LEDGER,  // 인메모리 재고 원장 + write-behind (한정판매 등 hot item)
+    SHARDED  // item_stock_shard N 개 row 로 나눠서 락 경합 분산
+}
@@ -0,0 +1,24 @@
+package jpabook.jpashop.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// 요청에 들어 있는 회원 / 상품 id 가 없다. 클라이언트 입력 오류이므로 400
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class NoSuchEntityException extends RuntimeException{
+    public NoSuchEntityException() {
+        super();
+    }
+
+    public NoSuchEntityException(String message) {
+        super(message);
+    }
+
+    public NoSuchEntityException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public NoSuchEntityException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,105 @@
+package jpabook.jpashop.monitoring;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.BaseStream;
+
+/**
+ * 리포지토리 / 서비스 메서드별 지표.
+ *
+ * - jpashop.method            : 지연시간 (Prometheus histogram)
+ * - jpashop.method.rows       : 반환한 row 수 (컬렉션 크기, Optional / 단건은 0 또는 1)
+ * - jpashop.method.statements : 호출 한번에 실행된 SQL 수 (p6spy). 서비스 지표는 안에서 부른 리포지토리 SQL 을 포함한다.
+ *
+ * 태그 : class, method, exception. /actuator/prometheus 로 노출
+ * 트랜잭션 프록시보다 바깥에서 감싸야 커밋 직전 flush 의 SQL 과 커밋 시간까지 잰다 (HIGHEST_PRECEDENCE).
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class MethodMetricsAspect {
+
+    private final MeterRegistry registry;
+    private final SqlStatementCounter sqlStatementCounter;
+
+    // OrderRepositoryCustomImpl / ItemRepositoryCustomImpl 빈이 아니라 리포지토리 프록시에 걸어야 두번 세지 않는다
+    @Pointcut("target(jpabook.jpashop.repository.OrderRepository)"
+            + " || target(jpabook.jpashop.repository.MemberRepository)"
+            + " || target(jpabook.jpashop.repository.ItemRepository)"
+            + " || target(jpabook.jpashop.service.OrderService)"
+            + " || target(jpabook.jpashop.service.query.OrderQueryService)")
+    public void monitored() {
+    }
+
+    @Around("monitored() && execution(public * *(..)) && !execution(* java.lang.Object.*(..))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        String className = joinPoint.getSignature().getDeclaringType().getSimpleName();
+        String methodName = joinPoint.getSignature().getName();
+
+        long statementsBefore = sqlStatementCounter.current();
+        long start = System.nanoTime();
+        String exception = "none";
+        try {
+            Object result = joinPoint.proceed();
+            record(className, methodName, "rows", rows(result));
+            return result;
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            Timer.builder("jpashop.method")
+                    .tags("class", className, "method", methodName, "exception", exception)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            record(className, methodName, "statements", sqlStatementCounter.current() - statementsBefore);
+        }
+    }
+
+    private void record(String className, String methodName, String name, long value) {
+        if (value < 0) {
+            return;
+        }
+        DistributionSummary.builder("jpashop.method." + name)
+                .tags("class", className, "method", methodName)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(value);
+    }
+
+    // row 수를 알 수 없는 반환값 (void, Stream, Number 등) 은 -1
+    private long rows(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Map) {
+            return ((Map<?, ?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        if (result == null || result instanceof Number || result instanceof Boolean || result instanceof BaseStream) {
+            return -1;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,93 @@
+package jpabook.jpashop.monitoring;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.exception.RepeatedQueryException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HTTP 요청 하나 동안 실행된 SQL 을 fingerprint 별로 세서 N+1 을 잡는다.
+ *
+ * 같은 fingerprint 가 threshold 번을 넘으면 경고 로그 + jpashop.sql.repetition 카운터를 올린다.
+ * fail-request 가 true 면 (개발 환경용) 넘는 순간 RepeatedQueryException 을 던져 요청 자체를 실패시킨다.
+ * 뷰 렌더링 중 지연로딩(orderList.html)도 필터 안에서 일어나므로 같이 잡힌다.
+ */
+@Slf4j
+@Component
+public class SqlRepetitionDetector extends OncePerRequestFilter {
+
+    private static final ThreadLocal<Map<String, Integer>> FINGERPRINTS = new ThreadLocal<>();
+
+    private final MeterRegistry registry;
+    private final int threshold;
+    private final boolean failRequest;
+
+    public SqlRepetitionDetector(MeterRegistry registry,
+                                 @Value("${jpashop.sql-repetition.threshold:10}") int threshold,
+                                 @Value("${jpashop.sql-repetition.fail-request:false}") boolean failRequest) {
+        this.registry = registry;
+        this.threshold = threshold;
+        this.failRequest = failRequest;
+    }
+
+    // p6spy 에 등록되는 리스너. 요청 스레드가 아니면 (스케줄러 등) 세지 않는다
+    @Component
+    static class Listener extends SimpleJdbcEventListener {
+
+        private final SqlRepetitionDetector detector;
+
+        Listener(SqlRepetitionDetector detector) {
+            this.detector = detector;
+        }
+
+        @Override
+        public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+            detector.collect(statementInformation.getSql());
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Map<String, Integer> fingerprints = new HashMap<>();
+        FINGERPRINTS.set(fingerprints);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            FINGERPRINTS.remove();
+            fingerprints.forEach((fingerprint, count) -> {
+                if (count > threshold) {
+                    log.warn("N+1 의심 : {} {} 에서 같은 SQL {}회 실행 - {}", request.getMethod(), request.getRequestURI(), count, fingerprint);
+                }
+            });
+        }
+    }
+
+    void collect(String sql) {
+        Map<String, Integer> fingerprints = FINGERPRINTS.get();
+        if (fingerprints == null) {
+            return;
+        }
+        String fingerprint = SqlFingerprint.of(sql);
+        int count = fingerprints.merge(fingerprint, 1, Integer::sum);
+        if (count == threshold + 1) {
+            registry.counter("jpashop.sql.repetition").increment();
+            if (failRequest) {
+                throw new RepeatedQueryException("같은 SQL 이 " + count + "회 이상 실행되었습니다 (N+1 의심): " + fingerprint);
+            }
+        }
+    }
+}
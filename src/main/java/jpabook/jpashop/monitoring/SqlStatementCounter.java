@@ -0,0 +1,26 @@
+package jpabook.jpashop.monitoring;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+
+/**
+ * 스레드별로 실행된 SQL 수를 센다. p6spy 가 JdbcEventListener 빈을 자동으로 등록한다.
+ * 값 자체보다 호출 전후 차이로 쓴다. (MethodMetricsAspect)
+ */
+@Component
+public class SqlStatementCounter extends SimpleJdbcEventListener {
+
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        COUNT.get()[0]++;
+    }
+
+    public long current() {
+        return COUNT.get()[0];
+    }
+}
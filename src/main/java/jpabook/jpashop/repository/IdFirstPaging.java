@@ -0,0 +1,40 @@
+package jpabook.jpashop.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * 컬렉션 fetch join 페이징 2단계 조회.
+ * 1단계 : 루트 id 만 DB 에서 offset/limit 으로 페이징 (row 뻥튀기 없음)
+ * 2단계 : 해당 id 들만 in 절로 컬렉션까지 fetch join. 페이지가 커도 InListLoader 로 청크를 나눠 읽는다
+ * 컬렉션 fetch join 에 limit 을 걸면 하이버네이트가 전체 row 를 읽고 메모리에서 페이징(HHH000104)하는 문제를 피한다.
+ */
+public final class IdFirstPaging {
+
+    private IdFirstPaging() {
+    }
+
+    // loader 결과는 순서가 보장되지 않으므로 1단계 id 순서대로 다시 정렬한다
+    public static <T> List<T> fetch(List<Long> pageIds, Function<List<Long>, List<T>> loader, Function<T, Long> idExtractor) {
+        if (pageIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<Long, T> byId = InListLoader.load(pageIds, loader).stream()
+                .collect(toMap(idExtractor, Function.identity(), (a, b) -> a));
+
+        List<T> result = new ArrayList<>(pageIds.size());
+        for (Long id : pageIds) {
+            T entity = byId.get(id);
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+}
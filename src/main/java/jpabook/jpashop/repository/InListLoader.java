@@ -0,0 +1,75 @@
+package jpabook.jpashop.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * id 목록을 in 절로 나눠 읽는 로더.
+ *
+ * - 청크 : 최대 MAX_CHUNK_SIZE 개씩 잘라서 DB 파라미터 개수 한계를 넘지 않는다.
+ * - 패딩 : 마지막 청크는 2의 거듭제곱 크기까지 마지막 id 를 반복해 채운다.
+ *   in 절 크기가 1, 2, 4 ... MAX_CHUNK_SIZE 중 하나로만 나오므로 SQL 문자열 종류가 10개를 넘지 않고
+ *   하이버네이트 쿼리 플랜 캐시 / JDBC statement 캐시가 재사용된다.
+ */
+public final class InListLoader {
+
+    public static final int MAX_CHUNK_SIZE = 512;
+
+    private InListLoader() {
+    }
+
+    public static <T> List<T> load(Collection<Long> ids, Function<List<Long>, List<T>> loader) {
+        List<T> result = new ArrayList<>();
+        for (List<Long> chunk : chunks(ids)) {
+            result.addAll(loader.apply(chunk));
+        }
+        return result;
+    }
+
+    // 청크 결과를 바로 key 별 목록에 합친다
+    public static <T, K> Map<K, List<T>> loadGrouped(Collection<Long> ids, Function<List<Long>, List<T>> loader,
+                                                     Function<T, K> classifier) {
+        Map<K, List<T>> grouped = new HashMap<>();
+        for (List<Long> chunk : chunks(ids)) {
+            for (T row : loader.apply(chunk)) {
+                grouped.computeIfAbsent(classifier.apply(row), k -> new ArrayList<>()).add(row);
+            }
+        }
+        return grouped;
+    }
+
+    // 결과를 모으지 않고 청크마다 직접 처리할 때 (스트리밍)
+    public static void forEachChunk(Collection<Long> ids, Consumer<List<Long>> action) {
+        chunks(ids).forEach(action);
+    }
+
+    static List<List<Long>> chunks(Collection<Long> ids) {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        if (distinct.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<List<Long>> chunks = new ArrayList<>(distinct.size() / MAX_CHUNK_SIZE + 1);
+        for (int from = 0; from < distinct.size(); from += MAX_CHUNK_SIZE) {
+            int to = Math.min(from + MAX_CHUNK_SIZE, distinct.size());
+            List<Long> chunk = new ArrayList<>(distinct.subList(from, to));
+            Long last = chunk.get(chunk.size() - 1);
+            for (int size = paddedSize(chunk.size()); chunk.size() < size; ) {
+                chunk.add(last);
+            }
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    static int paddedSize(int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+}
@@ -1,7 +1,19 @@
 package jpabook.jpashop.repository;
 
 import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.domain.item.StockPolicy;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface ItemRepository extends JpaRepository<Item, Long> {
+import java.util.List;
+import java.util.Optional;
+
+public interface ItemRepository extends JpaRepository<Item, Long>, ItemRepositoryCustom {
+
+    @Query("select i.id from Item i where i.stockPolicy = :stockPolicy")
+    List<Long> findIdsByStockPolicy(@Param("stockPolicy") StockPolicy stockPolicy);
+
+    @Query("select i.stockPolicy from Item i where i.id = :itemId")
+    Optional<StockPolicy> findStockPolicy(@Param("itemId") Long itemId);
 }
@@ -0,0 +1,13 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.item.Item;
+
+import java.util.List;
+import java.util.SortedMap;
+
+public interface ItemRepositoryCustom {
+    Item decreaseStock(Long itemId, int quantity);
+    Item increaseStock(Long itemId, int quantity);
+    List<Long> decreaseStocks(SortedMap<Long, Integer> itemCounts);
+    void increaseStocks(SortedMap<Long, Integer> itemCounts);
+}
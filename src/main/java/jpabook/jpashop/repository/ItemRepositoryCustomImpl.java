@@ -0,0 +1,137 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+// 재고 update 는 JPQL 벌크 연산 대신 JDBC 로 보낸다.
+// JPQL 벌크 update 는 2차 캐시의 Item 영역 전체를 비워버려서 주문 한건마다 상품 캐시가 전부 날아간다. 대신 해당 상품만 evict
+@RequiredArgsConstructor
+public class ItemRepositoryCustomImpl implements ItemRepositoryCustom {
+
+    // stock_policy 도 조건에 넣는다. 다른 인스턴스가 SHARDED / LEDGER 로 바꾼 상품을 이 인스턴스가 아직 DIRECT 로 보내면
+    // 0 row 가 되고, StockService 가 row 의 정책을 다시 읽어 맞는 경로로 보낸다
+    private static final String DECREASE_STOCK_SQL =
+            "update item set stock_quantity = stock_quantity - ? where item_id = ? and stock_quantity >= ? and stock_policy = 'DIRECT'";
+    private static final String INCREASE_STOCK_SQL =
+            "update item set stock_quantity = stock_quantity + ? where item_id = ?";
+
+    private final EntityManager em;
+
+    // Item.removeStock() 은 읽고 -> 자바에서 빼고 -> 변경감지로 덮어쓰기 때문에 동시 주문시 재고가 초과 판매된다.
+    // 조건부 update 한번으로 검사와 차감을 DB 에서 원자적으로 처리. 영향받은 row 가 0 이면 재고 부족
+    @Override
+    public Item decreaseStock(Long itemId, int quantity) {
+        int updated = executeUpdate(DECREASE_STOCK_SQL, quantity, itemId, quantity);
+        if (updated == 0) {
+            throw new NotEnoughStockException("need more stock");
+        }
+        return synchronize(itemId);
+    }
+
+    @Override
+    public Item increaseStock(Long itemId, int quantity) {
+        executeUpdate(INCREASE_STOCK_SQL, quantity, itemId);
+        return synchronize(itemId);
+    }
+
+    // 장바구니 주문용. 상품 수와 상관없이 JDBC batch 한번으로 조건부 차감한다
+    // item_id 오름차순으로 보내서 여러 주문이 같은 상품들을 잡더라도 락 순서가 같아 데드락이 없다
+    // 차감하지 못한 상품 id 를 돌려준다. 재고 부족 / 없는 상품 / DIRECT 가 아닌 상품은 호출한 쪽이 구분한다
+    @Override
+    public List<Long> decreaseStocks(SortedMap<Long, Integer> itemCounts) {
+        if (itemCounts.isEmpty()) {
+            return Collections.emptyList();
+        }
+        em.flush();
+        List<Long> itemIds = new ArrayList<>(itemCounts.keySet());
+        int[] updated = em.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(DECREASE_STOCK_SQL)) {
+                for (Map.Entry<Long, Integer> entry : itemCounts.entrySet()) {
+                    ps.setInt(1, entry.getValue());
+                    ps.setLong(2, entry.getKey());
+                    ps.setInt(3, entry.getValue());
+                    ps.addBatch();
+                }
+                return ps.executeBatch();
+            }
+        });
+
+        List<Long> failed = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                failed.add(itemIds.get(i));
+            } else {
+                synchronize(itemIds.get(i));
+            }
+        }
+        return failed;
+    }
+
+    // 대량 취소용. 상품별 합계를 상품당 update 한번, JDBC batch 한번으로 되돌린다 (item_id 오름차순)
+    @Override
+    public void increaseStocks(SortedMap<Long, Integer> itemCounts) {
+        if (itemCounts.isEmpty()) {
+            return;
+        }
+        em.flush();
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INCREASE_STOCK_SQL)) {
+                for (Map.Entry<Long, Integer> entry : itemCounts.entrySet()) {
+                    ps.setInt(1, entry.getValue());
+                    ps.setLong(2, entry.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+        itemCounts.keySet().forEach(this::synchronize);
+    }
+
+    private int executeUpdate(String sql, Object... params) {
+        em.flush();
+        return em.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                for (int i = 0; i < params.length; i++) {
+                    ps.setObject(i + 1, params[i]);
+                }
+                return ps.executeUpdate();
+            }
+        });
+    }
+
+    // JDBC update 는 영속성 컨텍스트와 2차 캐시를 거치지 않는다.
+    // 이미 로딩된 엔티티는 다시 읽어 스냅샷까지 맞추고(변경감지로 덮어쓰지 않도록), 2차 캐시는 지금과 커밋 후 두번 evict 한다
+    private Item synchronize(Long itemId) {
+        evictFromSecondLevelCache(itemId);
+        Item item = em.getReference(Item.class, itemId);
+        if (Hibernate.isInitialized(item)) {
+            em.refresh(item);
+        }
+        return item;
+    }
+
+    private void evictFromSecondLevelCache(Long itemId) {
+        em.getEntityManagerFactory().getCache().evict(Item.class, itemId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    em.getEntityManagerFactory().getCache().evict(Item.class, itemId);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.item.ItemStockShard;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+
+public interface ItemStockShardRepository extends JpaRepository<ItemStockShard, Long> {
+
+    @Modifying
+    @Query("update ItemStockShard s set s.quantity = s.quantity - :quantity" +
+            " where s.itemId = :itemId and s.shardNo = :shardNo and s.quantity >= :quantity")
+    int decreaseQuantity(@Param("itemId") Long itemId, @Param("shardNo") int shardNo, @Param("quantity") int quantity);
+
+    @Modifying
+    @Query("update ItemStockShard s set s.quantity = s.quantity + :quantity where s.itemId = :itemId and s.shardNo = :shardNo")
+    int increaseQuantity(@Param("itemId") Long itemId, @Param("shardNo") int shardNo, @Param("quantity") int quantity);
+
+    @Query("select s.shardNo from ItemStockShard s where s.itemId = :itemId")
+    List<Integer> findShardNos(@Param("itemId") Long itemId);
+
+    @Query("select coalesce(sum(s.quantity), 0) from ItemStockShard s where s.itemId = :itemId")
+    long sumQuantity(@Param("itemId") Long itemId);
+
+    // 여러 샤드에 걸쳐 차감해야 할 때. 락 순서를 shardNo 로 고정해 데드락을 피한다
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from ItemStockShard s where s.itemId = :itemId order by s.shardNo")
+    List<ItemStockShard> findAllForUpdate(@Param("itemId") Long itemId);
+
+    @Modifying
+    @Query("delete from ItemStockShard s where s.itemId = :itemId")
+    int deleteByItemId(@Param("itemId") Long itemId);
+}
@@ -0,0 +1,118 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.MemberNameGram;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.internal.SessionFactoryImpl;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.util.Objects;
+
+/**
+ * member 가 insert / update / delete 될 때 같은 트랜잭션에서 member_name_gram 을 갱신한다.
+ *
+ * 서비스 계층에서 갱신하면 InitDb 처럼 em.persist 로 바로 넣는 경로가 색인에서 빠지므로 hibernate 이벤트에 건다.
+ * flush 도중에 불리므로 영속성 컨텍스트를 건드리지 않고 같은 커넥션으로 JDBC 를 직접 보낸다.
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberNameGramIndexer implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final String INSERT_SQL = "insert into member_name_gram (gram, member_id) values (?, ?)";
+    private static final String DELETE_SQL = "delete from member_name_gram where member_id = ?";
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImpl.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            insert(event.getSession(), event.getId(), name(event.getPersister(), event.getState()));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        String name = name(event.getPersister(), event.getState());
+        // merge 처럼 이전 상태를 모르면 그냥 다시 만든다
+        if (event.getOldState() != null && Objects.equals(name, name(event.getPersister(), event.getOldState()))) {
+            return;
+        }
+        delete(event.getSession(), event.getId());
+        insert(event.getSession(), event.getId(), name);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Member) {
+            delete(event.getSession(), event.getId());
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    // hibernate 5.3 에서는 오타 난 이 메서드가 아직 abstract 라 구현은 남기고 위 메서드로 넘긴다
+    @SuppressWarnings("deprecation")
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    private void insert(EventSource session, Serializable memberId, String name) {
+        if (MemberNameGram.gramsOf(name).isEmpty()) {
+            return;
+        }
+        session.doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+                for (String gram : MemberNameGram.gramsOf(name)) {
+                    ps.setString(1, gram);
+                    ps.setLong(2, (Long) memberId);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
+    private void delete(EventSource session, Serializable memberId) {
+        session.doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(DELETE_SQL)) {
+                ps.setLong(1, (Long) memberId);
+                ps.executeUpdate();
+            }
+        });
+    }
+
+    private String name(EntityPersister persister, Object[] state) {
+        return (String) state[persister.getEntityMetamodel().getPropertyIndex("name")];
+    }
+}
@@ -2,9 +2,24 @@ package jpabook.jpashop.repository;
 
 import jpabook.jpashop.domain.Member;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 public interface MemberRepository extends JpaRepository<Member, Long> {
     List<Member> findByName(String name);
+
+    // 엔티티를 만들지 않고 limit 1 로 존재 여부만 확인
+    boolean existsByName(String name);
+
+    // Bloom filter 재구성용. 트랜잭션 안에서 쓰고 닫아야 한다
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select m.name from Member m where m.name is not null")
+    Stream<String> streamAllNames();
 }
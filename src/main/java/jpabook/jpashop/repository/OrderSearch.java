@@ -9,4 +9,7 @@ public class OrderSearch {
 
     private String memberName;
     private OrderStatus orderStatus;
+    // true 면 hot 테이블 대신 archive 로 옮겨진 과거 주문을 검색한다
+    // (v5 DTO 조회 / /api/orders / summary 조회만 지원. 엔티티 조회, v4 simple 조회, keyset 페이징, export API, 주문 목록 화면은 history=true 를 400 으로 거절한다)
+    private boolean history;
 }
@@ -0,0 +1,195 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderStatus;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.AutoFlushEvent;
+import org.hibernate.event.spi.AutoFlushEventListener;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.FlushEvent;
+import org.hibernate.event.spi.FlushEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.internal.SessionFactoryImpl;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+/**
+ * orders / member 변경을 같은 트랜잭션에서 order_summary 에 반영한다.
+ *
+ * - 주문 insert : 회원명, 배송지까지 펼쳐서 한 row insert
+ * - 주문 상태 변경 (취소) : status 만 update
+ * - 회원명 변경 : 그 회원의 summary 전체 member_name update (member_id 인덱스)
+ *
+ * MemberNameGramIndexer 와 같이 hibernate 이벤트에 걸어서 em.persist 로 넣는 경로도 빠지지 않는다.
+ * JDBC 로 orders 를 직접 바꾸는 코드는 order_summary 도 같이 바꿔야 한다.
+ *
+ * 이벤트마다 바로 보내지 않고 세션별로 모아 두었다가 flush 가 끝날 때 (커밋 직전 flush, 쿼리 전 auto flush 포함)
+ * 같은 SQL 이 이어지는 구간마다 JDBC batch 한번으로 보낸다. 주문 1000건 insert 도 summary 는 batch 한번이다.
+ */
+@Component
+@RequiredArgsConstructor
+public class OrderSummaryProjector implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener,
+        FlushEventListener, AutoFlushEventListener {
+
+    private static final String INSERT_SQL = "insert into order_summary " +
+            "(order_id, member_id, member_name, order_date, status, city, street, zipcode) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_STATUS_SQL = "update order_summary set status = ? where order_id = ?";
+    private static final String UPDATE_MEMBER_NAME_SQL = "update order_summary set member_name = ? where member_id = ?";
+    private static final String DELETE_SQL = "delete from order_summary where order_id = ?";
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    // 세션은 한 스레드에서만 쓰이지만 맵은 세션끼리 공유한다. 롤백으로 flush 없이 끝난 세션은 완료 시점에 뺀다
+    private final Map<SessionImplementor, List<Row>> pending = Collections.synchronizedMap(new WeakHashMap<>());
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImpl.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+        registry.appendListeners(EventType.FLUSH, this);
+        registry.appendListeners(EventType.AUTO_FLUSH, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (!(event.getEntity() instanceof Order)) {
+            return;
+        }
+        Order order = (Order) event.getEntity();
+        Member member = order.getMember();
+        Address address = order.getDelivery() == null ? null : order.getDelivery().getAddress();
+        queue(event.getSession(), INSERT_SQL,
+                order.getId(),
+                member == null ? null : member.getId(),
+                member == null ? null : member.getName(),
+                order.getOrderDate() == null ? null : Timestamp.valueOf(order.getOrderDate()),
+                order.getStatus() == null ? null : order.getStatus().name(),
+                address == null ? null : address.getCity(),
+                address == null ? null : address.getStreet(),
+                address == null ? null : address.getZipcode());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Order) {
+            OrderStatus status = (OrderStatus) property(event.getPersister(), event.getState(), "status");
+            if (changed(event, "status")) {
+                queue(event.getSession(), UPDATE_STATUS_SQL, status == null ? null : status.name(), event.getId());
+            }
+        } else if (event.getEntity() instanceof Member) {
+            if (changed(event, "name")) {
+                queue(event.getSession(), UPDATE_MEMBER_NAME_SQL,
+                        property(event.getPersister(), event.getState(), "name"), event.getId());
+            }
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Order) {
+            queue(event.getSession(), DELETE_SQL, event.getId());
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    // hibernate 5.3 에서는 오타 난 이 메서드가 아직 abstract 라 구현은 남기고 위 메서드로 넘긴다
+    @SuppressWarnings("deprecation")
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    // 기본 flush 리스너 뒤에 등록되므로 이번 flush 의 insert / update 이벤트가 모두 쌓인 뒤에 불린다
+    @Override
+    public void onFlush(FlushEvent event) {
+        executeBatch(event.getSession());
+    }
+
+    @Override
+    public void onAutoFlush(AutoFlushEvent event) {
+        executeBatch(event.getSession());
+    }
+
+    // merge 처럼 이전 상태를 모르면 바뀐 것으로 본다
+    private boolean changed(PostUpdateEvent event, String propertyName) {
+        return event.getOldState() == null
+                || !Objects.equals(property(event.getPersister(), event.getState(), propertyName),
+                property(event.getPersister(), event.getOldState(), propertyName));
+    }
+
+    private Object property(EntityPersister persister, Object[] state, String propertyName) {
+        return state[persister.getEntityMetamodel().getPropertyIndex(propertyName)];
+    }
+
+    private void queue(EventSource session, String sql, Object... params) {
+        List<Row> rows = pending.get(session);
+        if (rows == null) {
+            rows = new ArrayList<>();
+            pending.put(session, rows);
+            session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, s) -> pending.remove(s));
+        }
+        rows.add(new Row(sql, params));
+    }
+
+    // 주문 insert 뒤의 취소 update 처럼 순서가 중요한 경우가 있어서 SQL 이 바뀔 때마다 batch 를 끊는다
+    private void executeBatch(EventSource session) {
+        List<Row> rows = pending.get(session);
+        if (rows == null || rows.isEmpty()) {
+            return;
+        }
+        List<Row> batch = new ArrayList<>(rows);
+        rows.clear();
+        session.doWork(connection -> {
+            int from = 0;
+            while (from < batch.size()) {
+                String sql = batch.get(from).sql;
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    for (; from < batch.size() && batch.get(from).sql.equals(sql); from++) {
+                        Object[] params = batch.get(from).params;
+                        for (int i = 0; i < params.length; i++) {
+                            ps.setObject(i + 1, params[i]);
+                        }
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+        });
+    }
+
+    @RequiredArgsConstructor
+    private static class Row {
+        private final String sql;
+        private final Object[] params;
+    }
+}
@@ -0,0 +1,18 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.item.StockLedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface StockLedgerEntryRepository extends JpaRepository<StockLedgerEntry, Long> {
+
+    List<StockLedgerEntry> findTop1000ByOrderByIdAsc();
+
+    // flush 와 겹쳐도 한 문장 스냅샷으로 읽어야 이중 계산이 없다
+    @Query("select i.stockQuantity + coalesce((select sum(e.delta) from StockLedgerEntry e where e.itemId = i.id), 0)" +
+            " from Item i where i.id = :itemId")
+    Number findAvailableStock(@Param("itemId") Long itemId);
+}
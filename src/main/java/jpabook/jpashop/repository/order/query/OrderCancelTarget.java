@@ -0,0 +1,22 @@
+package jpabook.jpashop.repository.order.query;
+
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.OrderStatus;
+import lombok.Data;
+
+// 대량 취소 검증용. 주문 상태 / 배송 상태와 캐시 무효화에 쓸 회원명만 읽는다
+@Data
+public class OrderCancelTarget {
+
+    private Long orderId;
+    private OrderStatus orderStatus;
+    private DeliveryStatus deliveryStatus;
+    private String memberName;
+
+    public OrderCancelTarget(Long orderId, OrderStatus orderStatus, DeliveryStatus deliveryStatus, String memberName) {
+        this.orderId = orderId;
+        this.orderStatus = orderStatus;
+        this.deliveryStatus = deliveryStatus;
+        this.memberName = memberName;
+    }
+}
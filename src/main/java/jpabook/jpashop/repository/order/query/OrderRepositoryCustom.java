@@ -1,9 +1,13 @@
 package jpabook.jpashop.repository.order.query;
 
 import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.repository.OrderCursor;
 import jpabook.jpashop.repository.OrderSearch;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface OrderRepositoryCustom {
     List<Order> findAllByQuerydsl(OrderSearch orderSearch);
@@ -15,6 +19,9 @@ public interface OrderRepositoryCustom {
 
     List<Order> findAllWithItemByQuerydsl(OrderSearch orderSearch);
     List<Order> findAllPageWithMemberDeliveryByQuerydsl(int offset, int limit, OrderSearch orderSearch);
+    List<Long> findOrderIdsByQuerydsl(int offset, int limit, OrderSearch orderSearch);
+    List<Order> findAllWithItemByIds(List<Long> orderIds);
+    List<Order> findAllPageWithItemByQuerydsl(int offset, int limit, OrderSearch orderSearch);
 
     List<OrderQueryDto> findOrderQueryDto(int offset, int limit, OrderSearch orderSearch);
     List<OrderQueryDto> findAllPageDtoWithMemberDeliveryByQuerydsl(int offset, int limit, OrderSearch orderSearch);
@@ -24,5 +31,28 @@ public interface OrderRepositoryCustom {
     List<OrderItemQueryDto> findAllDtoByQuerydslOptimization(List<Long> orderId);
 
     List<OrderFlatDto> findOrderQueryDtoFlat(int offset, int limit, OrderSearch orderSearch);
+    // flat 조인 + 주문 단위 페이징. row 를 order_id 순서로 한번에 접는다
+    List<OrderQueryDto> findOrderQueryDtoFolded(int offset, int limit, OrderSearch orderSearch);
+    // 위와 같은 조회를 DTO 없이 row 그대로 handler 에 흘려보낸다
+    void streamOrderQueryRows(int offset, int limit, OrderSearch orderSearch, OrderRowHandler handler);
+
+    // keyset 페이징 (order_date desc, order_id desc). cursor 가 null 이면 첫 페이지
+    List<Order> findAllPageWithMemberDeliveryByQuerydsl(OrderCursor cursor, int limit, OrderSearch orderSearch);
+    List<OrderQueryDto> findAllPageDtoWithMemberDeliveryByQuerydsl(OrderCursor cursor, int limit, OrderSearch orderSearch);
+    List<OrderQueryDto> findOrderQueryDtoOptimization(OrderCursor cursor, int limit, OrderSearch orderSearch);
+    List<OrderQueryDto> findOrderQueryDtoFolded(OrderCursor cursor, int limit, OrderSearch orderSearch);
+
+    // 전체 export 용 forward-only scroll. limit 없음
+    void scrollAllWithMemberDeliveryByQuerydsl(OrderSearch orderSearch, int fetchSize, Consumer<Order> consumer);
+
+    // 조인 없이 order_summary 읽기 모델에서 조회
+    List<SimpleOrderQueryDto> findAllSummaryByQuerydsl(int offset, int limit, OrderSearch orderSearch);
+    // 주문 아이템 없이 order() / endOrder() 만 호출된다
+    void streamSummaryRows(int offset, int limit, OrderSearch orderSearch, OrderRowHandler handler);
+
+    // 대량 취소. cancelAll 은 실제로 ORDER -> CANCEL 로 바뀐 주문 id 만 돌려준다
+    List<OrderCancelTarget> findCancelTargets(Collection<Long> orderIds);
+    List<Long> cancelAll(List<Long> orderIds);
+    Map<Long, Integer> sumItemCounts(Collection<Long> orderIds);
 
 }
@@ -1,25 +1,52 @@
 package jpabook.jpashop.repository.order.query;
 
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Projections;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.domain.*;
 import jpabook.jpashop.domain.item.QItem;
+import jpabook.jpashop.repository.IdFirstPaging;
+import jpabook.jpashop.repository.InListLoader;
+import jpabook.jpashop.repository.OrderCursor;
 import jpabook.jpashop.repository.OrderSearch;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.springframework.util.StringUtils;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.*;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
 
+    private static final int CANCEL_BATCH_SIZE = 1000;
+    private static final String CANCEL_ORDER_SQL =
+            "update orders set status = 'CANCEL' where order_id = ? and status = 'ORDER'" +
+                    " and not exists (select 1 from delivery d where d.delivery_id = orders.delivery_id and d.status = 'COMP')";
+    private static final String CANCEL_SUMMARY_SQL = "update order_summary set status = 'CANCEL' where order_id = ?";
+
     private final EntityManager em;
     private JPAQueryFactory query;
 
@@ -36,7 +63,7 @@ public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
                 .from(order)
                 .join(order.member, member)
                 .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
-                        !StringUtils.hasText(orderSearch.getMemberName()) ? null : member.name.contains(orderSearch.getMemberName()))
+                        memberNameContains(order, member, orderSearch.getMemberName()))
                 .limit(1000)
                 .fetch();
     }
@@ -114,7 +141,7 @@ public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
                 .join(order.member, member).fetchJoin()
                 .join(order.delivery, delivery).fetchJoin()
                 .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
-                        !StringUtils.hasText(orderSearch.getMemberName()) ? null : member.name.contains(orderSearch.getMemberName()))
+                        memberNameContains(order, member, orderSearch.getMemberName()))
                 .limit(1000)
                 .fetch();
     }
@@ -135,7 +162,7 @@ public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
                 .join(order.member, member)
                 .join(order.delivery, delivery)
                 .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
-                        !StringUtils.hasText(orderSearch.getMemberName()) ? null : member.name.contains(orderSearch.getMemberName()))
+                        memberNameContains(order, member, orderSearch.getMemberName()))
                 .limit(1000)
                 .fetch();
     }
@@ -164,11 +191,60 @@ public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
                 .join(order.orderItems, orderItem).fetchJoin()
                 .join(orderItem.item, item).fetchJoin()
                 .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
-                        !StringUtils.hasText(orderSearch.getMemberName()) ? null : member.name.contains(orderSearch.getMemberName()))
+                        memberNameContains(order, member, orderSearch.getMemberName()))
                 .limit(1000)
                 .fetch();
     }
 
+    // findAllWithItemByQuerydsl() 의 메모리 페이징 문제 해결 2 : id 먼저 페이징 후 해당 id 만 컬렉션 fetch join
+    // v3.1 처럼 DB 페이징이 되면서도 쿼리는 2번으로 고정된다 (id 페이징 1 + fetch join 1)
+    @Override
+    public List<Order> findAllPageWithItemByQuerydsl(int offset, int limit, OrderSearch orderSearch) {
+        List<Long> orderIds = findOrderIdsByQuerydsl(offset, limit, orderSearch);
+        return IdFirstPaging.fetch(orderIds, this::findAllWithItemByIds, Order::getId);
+    }
+
+    @Override
+    public List<Long> findOrderIdsByQuerydsl(int offset, int limit, OrderSearch orderSearch) {
+        query = new JPAQueryFactory(em);
+
+        QOrder order = QOrder.order;
+        QMember member = QMember.member;
+
+        return query
+                .select(order.id)
+                .from(order)
+                .join(order.member, member)
+                .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
+                        memberNameContains(order, member, orderSearch.getMemberName()))
+                .orderBy(order.id.asc())
+                .offset(offset)
+                .limit(limit)
+                .fetch();
+    }
+
+    @Override
+    public List<Order> findAllWithItemByIds(List<Long> orderIds) {
+        query = new JPAQueryFactory(em);
+
+        QOrder order = QOrder.order;
+        QMember member = QMember.member;
+        QDelivery delivery = QDelivery.delivery;
+        QOrderItem orderItem = QOrderItem.orderItem;
+        QItem item = QItem.item;
+
+        return query
+                .select(order).distinct()
+                .from(order)
+                .join(order.member, member).fetchJoin()
+                .join(order.delivery, delivery).fetchJoin()
+                // 아이템이 없는 주문도 id 페이지에 들어 있으므로 left join
+                .leftJoin(order.orderItems, orderItem).fetchJoin()
+                .leftJoin(orderItem.item, item).fetchJoin()
+                .where(order.id.in(orderIds))
+                .fetch();
+    }
+
     @Override
     public List<Order> findAllPageWithMemberDeliveryByQuerydsl(int offset, int limit, OrderSearch orderSearch) {
         query = new JPAQueryFactory(em);
@@ -193,7 +269,8 @@ public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
                 .join(order.member, member).fetchJoin()
                 .join(order.delivery, delivery).fetchJoin()
                 .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
-                        !StringUtils.hasText(orderSearch.getMemberName()) ? null : member.name.contains(orderSearch.getMemberName()))
+                        memberNameContains(order, member, orderSearch.getMemberName()))
+                .orderBy(order.id.asc())
                 .offset(offset)
                 .limit(limit)
                 .fetch();
@@ -214,7 +291,8 @@ public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
                 .join(order.member, member)
                 .join(order.delivery, delivery)
                 .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
-                        !StringUtils.hasText(orderSearch.getMemberName()) ? null : member.name.contains(orderSearch.getMemberName()))
+                        memberNameContains(order, member, orderSearch.getMemberName()))
+                .orderBy(order.id.asc())
                 .offset(offset)
                 .limit(limit)
                 .fetch();
@@ -250,23 +328,30 @@ public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
 
     @Override
     public List<OrderQueryDto> findOrderQueryDtoOptimization(int offset, int limit, OrderSearch orderSearch) {
+        if (orderSearch.isHistory()) {
+            return findArchivedOrderQueryDto(offset, limit, orderSearch);
+        }
         // 쿼리 1회
         List<OrderQueryDto> result = findAllPageDtoWithMemberDeliveryByQuerydsl(offset, limit, orderSearch);
         List<Long> orderIds = result.stream()
                 .map(OrderQueryDto::getOrderId)
                 .collect(Collectors.toList());
 
-        // 쿼리 1회
-        List<OrderItemQueryDto> orderItems = findAllDtoByQuerydslOptimization(orderIds);
-        Map<Long, List<OrderItemQueryDto>> orderItemMap = orderItems.stream()
-                .collect(Collectors.groupingBy(OrderItemQueryDto::getOrderId));
+        // 쿼리 1회 (id 가 MAX_CHUNK_SIZE 를 넘으면 청크 수만큼)
+        Map<Long, List<OrderItemQueryDto>> orderItemMap =
+                InListLoader.loadGrouped(orderIds, this::findOrderItemDtosIn, OrderItemQueryDto::getOrderId);
 
-        result.forEach(o -> o.setOrderItems(orderItemMap.get(o.getOrderId())));
+        result.forEach(o -> o.setOrderItems(orderItemMap.getOrDefault(o.getOrderId(), Collections.emptyList())));
         return result;
     }
 
     @Override
     public List<OrderItemQueryDto> findAllDtoByQuerydslOptimization(List<Long> orderIds) {
+        return InListLoader.load(orderIds, this::findOrderItemDtosIn);
+    }
+
+    // InListLoader 가 나눈 청크 하나. 크기는 항상 2의 거듭제곱
+    private List<OrderItemQueryDto> findOrderItemDtosIn(List<Long> orderIds) {
         query = new JPAQueryFactory(em);
 
         QItem item = QItem.item;
@@ -293,16 +378,517 @@ public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
 
         return query
                 .select(Projections.constructor(OrderFlatDto.class,
-                        order.id, member.name, order.orderDate, order.status, delivery.address, item.name, orderItem.count, orderItem.orderPrice))
+                        order.id, member.name, order.orderDate, order.status, delivery.address, item.name, orderItem.orderPrice, orderItem.count))
                 .from(order)
                 .join(order.member, member)
                 .join(order.delivery, delivery)
                 .join(order.orderItems, orderItem)
                 .join(orderItem.item, item)
                 .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
-                        !StringUtils.hasText(orderSearch.getMemberName()) ? null : member.name.contains(orderSearch.getMemberName()))
+                        memberNameContains(order, member, orderSearch.getMemberName()))
                 .offset(offset)
                 .limit(limit)
                 .fetch();
     }
+
+    // flat 조인은 row 단위라 offset/limit 을 걸면 주문 아이템이 페이지 경계에서 잘린다.
+    // 1. 주문 id 만 offset/limit 으로 페이징 (주문 단위)
+    // 2. 그 주문들만 flat 조인, order_id 순서로 받아서 연속된 row 를 한번에 주문 DTO 로 접는다
+    // row 는 커서로 한건씩 읽으므로 메모리는 페이지 크기(주문 DTO)만큼만 쓴다
+    @Override
+    public List<OrderQueryDto> findOrderQueryDtoFolded(int offset, int limit, OrderSearch orderSearch) {
+        List<OrderQueryDto> result = new ArrayList<>();
+        streamOrderQueryRows(offset, limit, orderSearch, new OrderQueryDtoFolder(result));
+        return result;
+    }
+
+    @Override
+    public void streamOrderQueryRows(int offset, int limit, OrderSearch orderSearch, OrderRowHandler handler) {
+        if (orderSearch.isHistory()) {
+            streamArchivedOrderQueryRows(offset, limit, orderSearch, handler);
+            return;
+        }
+        List<Long> orderIds = findOrderIdsByQuerydsl(offset, limit, orderSearch);
+
+        // 청크는 id 오름차순이 유지되므로 청크끼리 이어붙여도 순서가 같다
+        InListLoader.forEachChunk(orderIds, chunk -> streamFlatRows(chunk, handler));
+    }
+
+    // 전부 조인한 row 를 order_id 순서로 읽으면서 주문이 바뀔 때마다 끊어준다
+    private void streamFlatRows(List<Long> orderIds, OrderRowHandler handler) {
+        query = new JPAQueryFactory(em);
+
+        QOrder order = QOrder.order;
+        QMember member = QMember.member;
+        QDelivery delivery = QDelivery.delivery;
+        QOrderItem orderItem = QOrderItem.orderItem;
+        QItem item = QItem.item;
+
+        // 아이템이 없는 주문도 id 페이지에 들어 있으므로 left join. 아이템 컬럼이 모두 null 인 row 한건으로 온다
+        try (CloseableIterator<Tuple> rows = query
+                .select(order.id, member.name, order.orderDate, order.status, delivery.address,
+                        orderItem.id, item.name, orderItem.orderPrice, orderItem.count)
+                .from(order)
+                .join(order.member, member)
+                .join(order.delivery, delivery)
+                .leftJoin(order.orderItems, orderItem)
+                .leftJoin(orderItem.item, item)
+                .where(order.id.in(orderIds))
+                .orderBy(order.id.asc(), orderItem.id.asc())
+                .iterate()) {
+
+            Long currentOrderId = null;
+            while (rows.hasNext()) {
+                Tuple row = rows.next();
+                Long orderId = row.get(order.id);
+                if (!orderId.equals(currentOrderId)) {
+                    if (currentOrderId != null) {
+                        handler.endOrder();
+                    }
+                    handler.order(orderId, row.get(member.name), row.get(order.orderDate), row.get(order.status),
+                            row.get(delivery.address));
+                    currentOrderId = orderId;
+                }
+                if (row.get(orderItem.id) != null) {
+                    handler.orderItem(row.get(item.name), row.get(orderItem.orderPrice), row.get(orderItem.count));
+                }
+            }
+            if (currentOrderId != null) {
+                handler.endOrder();
+            }
+        }
+    }
+
+    // offset 페이징은 앞 페이지 row 를 모두 읽고 버리므로 뒤로 갈수록 느려진다.
+    // keyset 페이징은 (order_date, order_id) 인덱스에서 커서 위치부터 limit 만큼만 읽으므로 페이지 깊이와 무관하다.
+    @Override
+    public List<Order> findAllPageWithMemberDeliveryByQuerydsl(OrderCursor cursor, int limit, OrderSearch orderSearch) {
+        query = new JPAQueryFactory(em);
+
+        QOrder order = QOrder.order;
+        QMember member = QMember.member;
+        QDelivery delivery = QDelivery.delivery;
+
+        return query.
+                select(order)
+                .from(order)
+                .join(order.member, member).fetchJoin()
+                .join(order.delivery, delivery).fetchJoin()
+                .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
+                        memberNameContains(order, member, orderSearch.getMemberName()),
+                        beforeCursor(order, cursor))
+                .orderBy(order.orderDate.desc(), order.id.desc())
+                .limit(limit)
+                .fetch();
+    }
+
+    @Override
+    public List<OrderQueryDto> findAllPageDtoWithMemberDeliveryByQuerydsl(OrderCursor cursor, int limit, OrderSearch orderSearch) {
+        query = new JPAQueryFactory(em);
+
+        QOrder order = QOrder.order;
+        QMember member = QMember.member;
+        QDelivery delivery = QDelivery.delivery;
+
+        return query
+                .select(Projections.constructor(OrderQueryDto.class,
+                        order.id, order.member.name, order.orderDate, order.status, delivery.address))
+                .from(order)
+                .join(order.member, member)
+                .join(order.delivery, delivery)
+                .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
+                        memberNameContains(order, member, orderSearch.getMemberName()),
+                        beforeCursor(order, cursor))
+                .orderBy(order.orderDate.desc(), order.id.desc())
+                .limit(limit)
+                .fetch();
+    }
+
+    @Override
+    public List<OrderQueryDto> findOrderQueryDtoOptimization(OrderCursor cursor, int limit, OrderSearch orderSearch) {
+        List<OrderQueryDto> result = findAllPageDtoWithMemberDeliveryByQuerydsl(cursor, limit, orderSearch);
+        List<Long> orderIds = result.stream()
+                .map(OrderQueryDto::getOrderId)
+                .collect(Collectors.toList());
+
+        Map<Long, List<OrderItemQueryDto>> orderItemMap =
+                InListLoader.loadGrouped(orderIds, this::findOrderItemDtosIn, OrderItemQueryDto::getOrderId);
+
+        result.forEach(o -> o.setOrderItems(orderItemMap.getOrDefault(o.getOrderId(), Collections.emptyList())));
+        return result;
+    }
+
+    // row 단위로 limit 을 걸면 아이템이 limit 보다 많은 주문이 잘린다. findOrderQueryDtoFolded 처럼 주문 id 를 먼저
+    // keyset 으로 페이징하고, 그 주문들만 flat 조인해서 접은 뒤 id 순서(order_date desc, order_id desc)로 되돌린다
+    @Override
+    public List<OrderQueryDto> findOrderQueryDtoFolded(OrderCursor cursor, int limit, OrderSearch orderSearch) {
+        List<Long> orderIds = findOrderIdsByQuerydsl(cursor, limit, orderSearch);
+        return IdFirstPaging.fetch(orderIds, this::findOrderQueryDtosIn, OrderQueryDto::getOrderId);
+    }
+
+    private List<Long> findOrderIdsByQuerydsl(OrderCursor cursor, int limit, OrderSearch orderSearch) {
+        query = new JPAQueryFactory(em);
+
+        QOrder order = QOrder.order;
+        QMember member = QMember.member;
+
+        return query
+                .select(order.id)
+                .from(order)
+                .join(order.member, member)
+                .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
+                        memberNameContains(order, member, orderSearch.getMemberName()),
+                        beforeCursor(order, cursor))
+                .orderBy(order.orderDate.desc(), order.id.desc())
+                .limit(limit)
+                .fetch();
+    }
+
+    private List<OrderQueryDto> findOrderQueryDtosIn(List<Long> orderIds) {
+        List<OrderQueryDto> result = new ArrayList<>();
+        OrderQueryDtoFolder folder = new OrderQueryDtoFolder(result);
+        InListLoader.forEachChunk(orderIds, chunk -> streamFlatRows(chunk, folder));
+        return result;
+    }
+
+    // fetch() 는 결과 전체를 List 로 올리므로 전체 export 에는 쓸 수 없다.
+    // forward-only scroll + JDBC fetch size 로 커서를 열어두고 한 건씩 넘긴다. 영속성 컨텍스트 정리는 호출하는 쪽 책임.
+    @Override
+    public void scrollAllWithMemberDeliveryByQuerydsl(OrderSearch orderSearch, int fetchSize, Consumer<Order> consumer) {
+        query = new JPAQueryFactory(em);
+
+        QOrder order = QOrder.order;
+        QMember member = QMember.member;
+        QDelivery delivery = QDelivery.delivery;
+
+        ScrollableResults results = query
+                .select(order)
+                .from(order)
+                .join(order.member, member).fetchJoin()
+                .join(order.delivery, delivery).fetchJoin()
+                .where(orderSearch.getOrderStatus() == null ? null : order.status.eq(orderSearch.getOrderStatus()),
+                        memberNameContains(order, member, orderSearch.getMemberName()))
+                .orderBy(order.id.asc())
+                .createQuery()
+                .unwrap(org.hibernate.query.Query.class)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY);
+
+        try {
+            while (results.next()) {
+                consumer.accept((Order) results.get(0));
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    // order_summary 한 테이블만 읽는다. (order_date, order_id) 인덱스 순서 그대로 페이징
+    @Override
+    public List<SimpleOrderQueryDto> findAllSummaryByQuerydsl(int offset, int limit, OrderSearch orderSearch) {
+        if (orderSearch.isHistory()) {
+            return archivedOrderPage(offset, limit, orderSearch, SimpleOrderQueryDto.class);
+        }
+        query = new JPAQueryFactory(em);
+
+        QOrderSummary orderSummary = QOrderSummary.orderSummary;
+
+        return query
+                .select(Projections.constructor(SimpleOrderQueryDto.class,
+                        orderSummary.orderId, orderSummary.memberName, orderSummary.orderDate, orderSummary.status, orderSummary.address))
+                .from(orderSummary)
+                .where(summaryConditions(orderSummary, orderSearch))
+                .orderBy(orderSummary.orderDate.desc(), orderSummary.orderId.desc())
+                .offset(offset)
+                .limit(limit)
+                .fetch();
+    }
+
+    @Override
+    public void streamSummaryRows(int offset, int limit, OrderSearch orderSearch, OrderRowHandler handler) {
+        if (orderSearch.isHistory()) {
+            streamArchivedSummaryRows(offset, limit, orderSearch, handler);
+            return;
+        }
+        query = new JPAQueryFactory(em);
+
+        QOrderSummary orderSummary = QOrderSummary.orderSummary;
+
+        try (CloseableIterator<Tuple> rows = query
+                .select(orderSummary.orderId, orderSummary.memberName, orderSummary.orderDate, orderSummary.status, orderSummary.address)
+                .from(orderSummary)
+                .where(summaryConditions(orderSummary, orderSearch))
+                .orderBy(orderSummary.orderDate.desc(), orderSummary.orderId.desc())
+                .offset(offset)
+                .limit(limit)
+                .iterate()) {
+
+            while (rows.hasNext()) {
+                Tuple row = rows.next();
+                handler.order(row.get(orderSummary.orderId), row.get(orderSummary.memberName), row.get(orderSummary.orderDate),
+                        row.get(orderSummary.status), row.get(orderSummary.address));
+                handler.endOrder();
+            }
+        }
+    }
+
+    // 목록 조회와 스트리밍이 같은 조건을 쓴다. 회원명은 n-gram 색인으로 후보 회원을 줄인 뒤 contains 로 확인
+    private BooleanExpression[] summaryConditions(QOrderSummary orderSummary, OrderSearch orderSearch) {
+        String memberName = orderSearch.getMemberName();
+        return new BooleanExpression[]{
+                orderSearch.getOrderStatus() == null ? null : orderSummary.status.eq(orderSearch.getOrderStatus()),
+                !StringUtils.hasText(memberName) ? null : orderSummary.memberName.contains(memberName),
+                !StringUtils.hasText(memberName) || memberName.length() < MemberNameGram.GRAM_SIZE ? null
+                        : orderSummary.memberId.in(memberIdsByNameGrams(memberName))};
+    }
+
+    @Override
+    public List<OrderCancelTarget> findCancelTargets(Collection<Long> orderIds) {
+        return InListLoader.load(orderIds, this::findCancelTargetsIn);
+    }
+
+    private List<OrderCancelTarget> findCancelTargetsIn(List<Long> orderIds) {
+        query = new JPAQueryFactory(em);
+
+        QOrder order = QOrder.order;
+        QMember member = QMember.member;
+        QDelivery delivery = QDelivery.delivery;
+
+        return query
+                .select(Projections.constructor(OrderCancelTarget.class,
+                        order.id, order.status, delivery.status, member.name))
+                .from(order)
+                .join(order.member, member)
+                .join(order.delivery, delivery)
+                .where(order.id.in(orderIds))
+                .fetch();
+    }
+
+    // 주문마다 update 한 문장을 JDBC batch 로 보낸다. 조건부 update 라서 검증 뒤에 다른 트랜잭션이
+    // 먼저 취소 / 배송완료한 주문은 0 건이 되고, 그 주문은 돌려주지 않는다 (재고도 복구하지 않도록)
+    @Override
+    public List<Long> cancelAll(List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        em.flush();
+        Session session = em.unwrap(Session.class);
+        List<Long> canceled = session.doReturningWork(connection -> {
+            List<Long> updated = new ArrayList<>(orderIds.size());
+            try (PreparedStatement ps = connection.prepareStatement(CANCEL_ORDER_SQL)) {
+                for (int from = 0; from < orderIds.size(); from += CANCEL_BATCH_SIZE) {
+                    List<Long> batch = orderIds.subList(from, Math.min(from + CANCEL_BATCH_SIZE, orderIds.size()));
+                    for (Long orderId : batch) {
+                        ps.setLong(1, orderId);
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] > 0) {
+                            updated.add(batch.get(i));
+                        }
+                    }
+                }
+            }
+            // order_summary 는 엔티티 이벤트로만 맞춰지므로 (OrderSummaryProjector) JDBC update 는 직접 반영한다
+            try (PreparedStatement ps = connection.prepareStatement(CANCEL_SUMMARY_SQL)) {
+                for (int from = 0; from < updated.size(); from += CANCEL_BATCH_SIZE) {
+                    for (Long orderId : updated.subList(from, Math.min(from + CANCEL_BATCH_SIZE, updated.size()))) {
+                        ps.setLong(1, orderId);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            return updated;
+        });
+
+        // 이미 로딩된 주문은 다시 읽어서 변경감지가 ORDER 로 되돌리지 않게 한다
+        if (session.getStatistics().getEntityCount() > 0) {
+            for (Long orderId : canceled) {
+                Order loaded = em.getReference(Order.class, orderId);
+                if (Hibernate.isInitialized(loaded)) {
+                    em.refresh(loaded);
+                }
+            }
+        }
+        return canceled;
+    }
+
+    // 상품별 수량 합계. 청크마다 group by 한 결과를 다시 합친다
+    @Override
+    public Map<Long, Integer> sumItemCounts(Collection<Long> orderIds) {
+        Map<Long, Integer> itemCounts = new HashMap<>();
+        InListLoader.forEachChunk(orderIds, chunk -> {
+            query = new JPAQueryFactory(em);
+
+            QOrderItem orderItem = QOrderItem.orderItem;
+
+            List<Tuple> rows = query
+                    .select(orderItem.item.id, orderItem.count.sum())
+                    .from(orderItem)
+                    .where(orderItem.order.id.in(chunk))
+                    .groupBy(orderItem.item.id)
+                    .fetch();
+            // sum 은 하이버네이트가 Long 으로 돌려준다
+            rows.forEach(row -> itemCounts.merge(row.get(0, Long.class), row.get(1, Number.class).intValue(), Integer::sum));
+        });
+        return itemCounts;
+    }
+
+    // history 검색 : archive 테이블만 본다. 연관관계가 없으므로 id 로 on 조인한다
+    private List<OrderQueryDto> findArchivedOrderQueryDto(int offset, int limit, OrderSearch orderSearch) {
+        List<OrderQueryDto> result = archivedOrderPage(offset, limit, orderSearch, OrderQueryDto.class);
+        List<Long> orderIds = result.stream()
+                .map(OrderQueryDto::getOrderId)
+                .collect(Collectors.toList());
+
+        Map<Long, List<OrderItemQueryDto>> orderItemMap =
+                InListLoader.loadGrouped(orderIds, this::findArchivedOrderItemDtosIn, OrderItemQueryDto::getOrderId);
+
+        result.forEach(o -> o.setOrderItems(orderItemMap.getOrDefault(o.getOrderId(), Collections.emptyList())));
+        return result;
+    }
+
+    // archive 주문은 아이템을 in 쿼리로 붙인 한 페이지를 row 콜백으로 풀어준다
+    private void streamArchivedOrderQueryRows(int offset, int limit, OrderSearch orderSearch, OrderRowHandler handler) {
+        for (OrderQueryDto o : findArchivedOrderQueryDto(offset, limit, orderSearch)) {
+            handler.order(o.getOrderId(), o.getName(), o.getOrderDate(), o.getOrderStatus(), o.getAddress());
+            if (o.getOrderItems() != null) {
+                for (OrderItemQueryDto oi : o.getOrderItems()) {
+                    handler.orderItem(oi.getItemName(), oi.getOrderPrice(), oi.getCount());
+                }
+            }
+            handler.endOrder();
+        }
+    }
+
+    private void streamArchivedSummaryRows(int offset, int limit, OrderSearch orderSearch, OrderRowHandler handler) {
+        QOrderArchive orderArchive = QOrderArchive.orderArchive;
+        QDeliveryArchive deliveryArchive = QDeliveryArchive.deliveryArchive;
+        QMember member = QMember.member;
+
+        try (CloseableIterator<Tuple> rows = archivedOrderPageQuery(offset, limit, orderSearch)
+                .select(orderArchive.orderId, member.name, orderArchive.orderDate, orderArchive.status, deliveryArchive.address)
+                .iterate()) {
+
+            while (rows.hasNext()) {
+                Tuple row = rows.next();
+                handler.order(row.get(orderArchive.orderId), row.get(member.name), row.get(orderArchive.orderDate),
+                        row.get(orderArchive.status), row.get(deliveryArchive.address));
+                handler.endOrder();
+            }
+        }
+    }
+
+    // OrderQueryDto / SimpleOrderQueryDto 둘 다 (id, 회원명, 주문일, 상태, 주소) 생성자를 쓴다
+    private <T> List<T> archivedOrderPage(int offset, int limit, OrderSearch orderSearch, Class<T> type) {
+        QOrderArchive orderArchive = QOrderArchive.orderArchive;
+        QDeliveryArchive deliveryArchive = QDeliveryArchive.deliveryArchive;
+        QMember member = QMember.member;
+
+        return archivedOrderPageQuery(offset, limit, orderSearch)
+                .select(Projections.constructor(type,
+                        orderArchive.orderId, member.name, orderArchive.orderDate, orderArchive.status, deliveryArchive.address))
+                .fetch();
+    }
+
+    private JPAQuery<?> archivedOrderPageQuery(int offset, int limit, OrderSearch orderSearch) {
+        query = new JPAQueryFactory(em);
+
+        QOrderArchive orderArchive = QOrderArchive.orderArchive;
+        QDeliveryArchive deliveryArchive = QDeliveryArchive.deliveryArchive;
+        QMember member = QMember.member;
+
+        return query
+                .from(orderArchive)
+                .join(member).on(member.id.eq(orderArchive.memberId))
+                .join(deliveryArchive).on(deliveryArchive.deliveryId.eq(orderArchive.deliveryId))
+                .where(orderSearch.getOrderStatus() == null ? null : orderArchive.status.eq(orderSearch.getOrderStatus()),
+                        memberNameContains(orderArchive.memberId, member, orderSearch.getMemberName()))
+                .orderBy(orderArchive.orderDate.desc(), orderArchive.orderId.desc())
+                .offset(offset)
+                .limit(limit);
+    }
+
+    private List<OrderItemQueryDto> findArchivedOrderItemDtosIn(List<Long> orderIds) {
+        query = new JPAQueryFactory(em);
+
+        QOrderItemArchive orderItemArchive = QOrderItemArchive.orderItemArchive;
+        QItem item = QItem.item;
+
+        return query
+                .select(Projections.constructor(OrderItemQueryDto.class,
+                        orderItemArchive.orderId, item.name, orderItemArchive.orderPrice, orderItemArchive.count))
+                .from(orderItemArchive)
+                .join(item).on(item.id.eq(orderItemArchive.itemId))
+                .where(orderItemArchive.orderId.in(orderIds))
+                .orderBy(orderItemArchive.orderItemId.asc())
+                .fetch();
+    }
+
+    // 회원명 부분일치 : n-gram 색인으로 후보 회원 id 를 먼저 찾고 그 회원들의 주문만 본다. (member 전체 like 스캔 X)
+    // gram 이 다 있어도 순서/인접까지 맞는 건 아니므로 후보 회원에 대해서만 contains 로 한번 더 확인
+    private BooleanExpression memberNameContains(QOrder order, QMember member, String memberName) {
+        return memberNameContains(order.member.id, member, memberName);
+    }
+
+    private BooleanExpression memberNameContains(NumberPath<Long> memberId, QMember member, String memberName) {
+        if (!StringUtils.hasText(memberName)) {
+            return null;
+        }
+        if (memberName.length() < MemberNameGram.GRAM_SIZE) {
+            return member.name.contains(memberName);
+        }
+
+        return memberId.in(memberIdsByNameGrams(memberName))
+                .and(member.name.contains(memberName));
+    }
+
+    private JPQLQuery<Long> memberIdsByNameGrams(String memberName) {
+        Set<String> grams = MemberNameGram.gramsOf(memberName);
+        QMemberNameGram memberNameGram = QMemberNameGram.memberNameGram;
+        return JPAExpressions
+                .select(memberNameGram.memberId)
+                .from(memberNameGram)
+                .where(memberNameGram.gram.in(grams))
+                .groupBy(memberNameGram.memberId)
+                .having(memberNameGram.gram.count().eq((long) grams.size()));
+    }
+
+    private BooleanExpression beforeCursor(QOrder order, OrderCursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        return order.orderDate.lt(cursor.getOrderDate())
+                .or(order.orderDate.eq(cursor.getOrderDate()).and(order.id.lt(cursor.getOrderId())));
+    }
+
+    // row 콜백을 OrderQueryDto 목록으로 모은다
+    private static class OrderQueryDtoFolder implements OrderRowHandler {
+
+        private final List<OrderQueryDto> result;
+        private OrderQueryDto current;
+
+        OrderQueryDtoFolder(List<OrderQueryDto> result) {
+            this.result = result;
+        }
+
+        @Override
+        public void order(Long orderId, String name, LocalDateTime orderDate, OrderStatus orderStatus, Address address) {
+            current = new OrderQueryDto(orderId, name, orderDate, orderStatus, address, new ArrayList<>());
+            result.add(current);
+        }
+
+        @Override
+        public void orderItem(String itemName, int orderPrice, int count) {
+            current.getOrderItems().add(new OrderItemQueryDto(current.getOrderId(), itemName, orderPrice, count));
+        }
+
+        @Override
+        public void endOrder() {
+            current = null;
+        }
+    }
 }
@@ -0,0 +1,19 @@
+package jpabook.jpashop.repository.order.query;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.OrderStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * 주문 목록을 DTO 로 모으지 않고 row 단위로 받는 콜백.
+ * 주문마다 order() -> orderItem() 0..n 번 -> endOrder() 순서로 호출된다.
+ */
+public interface OrderRowHandler {
+
+    void order(Long orderId, String name, LocalDateTime orderDate, OrderStatus orderStatus, Address address);
+
+    void orderItem(String itemName, int orderPrice, int count);
+
+    void endOrder();
+}
@@ -0,0 +1,18 @@
+package jpabook.jpashop.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class BulkCancelResult {
+
+    private int canceled;
+    private List<Long> alreadyCanceled;
+    private List<Long> delivered;
+    private List<Long> notFound;
+    // 검증 뒤 다른 트랜잭션이 먼저 취소 / 배송완료해서 update 되지 않은 주문
+    private List<Long> changedConcurrently;
+}
@@ -1,12 +1,15 @@
 package jpabook.jpashop.service;
 
 import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.domain.item.StockPolicy;
 import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.service.query.OrderSearchCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
 
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
@@ -14,22 +17,47 @@ import java.util.List;
 public class ItemService {
 
     private final ItemRepository itemRepository;
+    private final StockService stockService;
+    private final OrderSearchCache orderSearchCache;
 
     @Transactional
     public void saveItem(Item item) {
         itemRepository.save(item);
     }
 
+    // stockQuantity 는 폼에 채워 준 판매 가능 재고(available). SHARDED 는 item.stock_quantity 가 0 이므로
+    // 재고를 바꾸지 않았으면 stock_quantity 는 쓰지 않고(로딩 뒤 커밋된 주문 차감을 덮어쓰지 않도록) 샤드 / 원장도 다시 만들지 않는다
     @Transactional
     public void updateItem(Long itemId, String name, int price, int stockQuantity) {
         Item item = itemRepository.findById(itemId).orElse(null);
+        if (!item.getName().equals(name)) {
+            orderSearchCache.itemRenamed();
+        }
+        if (stockService.available(itemId) == stockQuantity) {
+            item.rename(name, price);
+            return;
+        }
         item.update(name, price, stockQuantity);
+        stockService.stockUpdated(item);
+    }
+
+    @Transactional
+    public void changeStockPolicy(Long itemId, StockPolicy stockPolicy) {
+        stockService.changePolicy(itemId, stockPolicy);
     }
 
     public List<Item> findItems() {
         return itemRepository.findAll();
     }
 
+    public int availableStock(Long itemId) {
+        return stockService.available(itemId);
+    }
+
+    public Map<Long, Integer> availableStocks(List<Item> items) {
+        return stockService.availableAll(items);
+    }
+
     public Item findById(Long itemId) {
         return itemRepository.findById(itemId).orElse(null);
     }
@@ -0,0 +1,160 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * 가입된 회원명 Bloom filter.
+ *
+ * mightContain() 이 false 면 그 이름은 확실히 없으므로 중복 검사 쿼리를 생략할 수 있다.
+ * true 는 "있을 수도 있다" 라서 DB 로 다시 확인해야 한다.
+ *
+ * - 시작할 때 member 테이블 전체 이름으로 다시 만든다.
+ * - 가입 / 이름 변경시 add(). 롤백된 이름이 남아도 오탐만 늘 뿐 누락은 없다.
+ * - 예상 개수를 넘겨 넣으면 오탐률이 올라가고 DB 확인이 늘어난다. 중복 방지는 member.name unique 제약이 최종 보장한다.
+ */
+@Slf4j
+@Component
+public class MemberNameFilter {
+
+    private final MemberRepository memberRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+
+    private volatile Bits bits;
+
+    public MemberNameFilter(MemberRepository memberRepository, PlatformTransactionManager transactionManager,
+                            @Value("${jpashop.member-name-filter.expected-insertions:1000000}") long expectedInsertions,
+                            @Value("${jpashop.member-name-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.memberRepository = memberRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.bits = new Bits(expectedInsertions, falsePositiveRate);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long memberCount = memberRepository.count();
+        Bits rebuilt = new Bits(Math.max(expectedInsertions, memberCount * 2), falsePositiveRate);
+        // 새로 만드는 동안 들어온 가입도 놓치지 않도록 교체 전까지는 기존 필터에도 계속 add 된다
+        transactionTemplate.execute(status -> {
+            try (Stream<String> names = memberRepository.streamAllNames()) {
+                names.forEach(rebuilt::add);
+            }
+            return null;
+        });
+        Bits previous = bits;
+        bits = rebuilt;
+        rebuilt.merge(previous);
+        log.info("member name filter rebuilt: {} members, {} bits, {} hashes", memberCount, rebuilt.size(), rebuilt.hashCount);
+    }
+
+    public boolean mightContain(String name) {
+        return name != null && bits.mightContain(name);
+    }
+
+    public void add(String name) {
+        if (name != null) {
+            bits.add(name);
+        }
+    }
+
+    public long getInsertions() {
+        return bits.insertions.get();
+    }
+
+    static class Bits {
+
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicLong insertions = new AtomicLong();
+
+        // m = -n ln p / (ln 2)^2, k = m / n ln 2
+        Bits(long expectedInsertions, double falsePositiveRate) {
+            long n = Math.max(1, expectedInsertions);
+            long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, (m + 63) / 64));
+            this.bitCount = (long) words.length() * 64;
+            this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        }
+
+        void add(String name) {
+            long hash = hash(name);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                set(index(h1 + i * h2));
+            }
+            insertions.incrementAndGet();
+        }
+
+        boolean mightContain(String name) {
+            long hash = hash(name);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long index = index(h1 + i * h2);
+                if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 크기가 같을 때만 비트를 합칠 수 있다. 다르면 교체 직전 구간의 가입은 DB 확인 + unique 제약에 맡긴다
+        void merge(Bits other) {
+            if (other.words.length() != words.length() || other.hashCount != hashCount) {
+                return;
+            }
+            for (int i = 0; i < words.length(); i++) {
+                long word = other.words.get(i);
+                if (word != 0) {
+                    words.accumulateAndGet(i, word, (a, b) -> a | b);
+                }
+            }
+        }
+
+        long size() {
+            return bitCount;
+        }
+
+        private long index(int combined) {
+            return (combined & 0x7fffffffL) % bitCount;
+        }
+
+        private void set(long index) {
+            long mask = 1L << index;
+            words.accumulateAndGet((int) (index >>> 6), mask, (a, b) -> a | b);
+        }
+
+        // FNV-1a 64bit 후 murmur3 fmix64 로 섞는다. 상위/하위 32bit 를 두 해시로 쓴다 (Kirsch-Mitzenmacher)
+        private static long hash(String name) {
+            long h = 0xcbf29ce484222325L;
+            for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+                h ^= b;
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -2,7 +2,10 @@ package jpabook.jpashop.service;
 
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.service.query.OrderSearchCache;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -14,17 +17,29 @@ import java.util.List;
 public class MemberService {
 
     private final MemberRepository memberRepository;
+    private final MemberNameFilter memberNameFilter;
+    private final OrderSearchCache orderSearchCache;
 
     @Transactional
     public Long join(Member member) {
-        validateDuplicateMember(member);
-        memberRepository.save(member);
+        validateDuplicateName(member.getName());
+        try {
+            // 동시에 같은 이름으로 가입하면 검사를 둘 다 통과할 수 있다. unique 제약 위반을 바로 확인하기 위해 flush
+            memberRepository.saveAndFlush(member);
+        } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+            // 상대 트랜잭션이 아직 커밋 전이면 H2 는 unique 위반 대신 동시 수정 오류를 낸다
+            throw new IllegalStateException("이미 존재하는 회원입니다", e);
+        }
+        memberNameFilter.add(member.getName());
         return member.getId();
     }
 
-    private void validateDuplicateMember(Member member) {
-        List<Member> findMembers = memberRepository.findByName(member.getName());
-        if (!findMembers.isEmpty()) {
+    // Bloom filter 에 없는 이름은 확실히 새 이름이므로 DB 조회를 생략한다
+    private void validateDuplicateName(String name) {
+        if (!memberNameFilter.mightContain(name)) {
+            return;
+        }
+        if (memberRepository.existsByName(name)) {
             throw new IllegalStateException("이미 존재하는 회원입니다");
         }
     }
@@ -40,6 +55,18 @@ public class MemberService {
     @Transactional
     public void update(Long id, String name) {
         Member member = memberRepository.findById(id).orElse(null);
+        if (member.getName().equals(name)) {
+            return;
+        }
+        validateDuplicateName(name);
+        orderSearchCache.memberRenamed(member.getName(), name);
         member.setName(name);
+        try {
+            // 가입과 같이 동시에 같은 이름으로 바꾸는 경우는 unique 제약으로 막는다
+            memberRepository.flush();
+        } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+            throw new IllegalStateException("이미 존재하는 회원입니다", e);
+        }
+        memberNameFilter.add(name);
     }
 }
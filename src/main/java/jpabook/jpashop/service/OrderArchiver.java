@@ -0,0 +1,179 @@
+package jpabook.jpashop.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.service.query.OrderSearchCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * 오래된 주문(order_date 가 retention-days 전)과 취소 후 canceled-retention-days 가 지난 주문을
+ * orders / order_item / delivery 에서 *_archive 테이블로 옮긴다.
+ *
+ * - 청크 하나(chunk-size 건)가 트랜잭션 하나. 청크 사이에 pause-ms 만큼 쉬고, 한번에 max-chunks 까지만 돈다.
+ *   주문 트랜잭션과 락 / IO 를 나눠 쓰기 위해서다. 남은 건 다음 주기에 이어서 옮긴다.
+ * - 옮길 주문은 select ... for update 로 잠그므로 그 사이 취소 / 수정되지 않는다.
+ * - JDBC 로 옮기므로 엔티티 이벤트가 없다. order_summary (hot 주문만 가진다) 와 주문 검색 캐시는 직접 맞춘다.
+ */
+@Slf4j
+@Component
+public class OrderArchiver {
+
+    private static final String SELECT_TARGETS_SQL =
+            "select order_id, delivery_id from orders" +
+                    " where order_date < :orderedBefore or (status = 'CANCEL' and order_date < :canceledBefore)" +
+                    " order by order_id limit :limit for update";
+    private static final String SELECT_MEMBER_NAMES_SQL =
+            "select distinct m.name from member m where m.member_id in (select o.member_id from orders o where o.order_id in (:orderIds))";
+    private static final String COPY_DELIVERY_SQL =
+            "insert into delivery_archive (delivery_id, city, street, zipcode, status)" +
+                    " select delivery_id, city, street, zipcode, status from delivery where delivery_id in (:deliveryIds)";
+    private static final String COPY_ORDER_SQL =
+            "insert into orders_archive (order_id, member_id, delivery_id, order_date, status, archived_at)" +
+                    " select order_id, member_id, delivery_id, order_date, status, :archivedAt from orders where order_id in (:orderIds)";
+    private static final String COPY_ORDER_ITEM_SQL =
+            "insert into order_item_archive (order_item_id, orders_id, item_id, order_price, count)" +
+                    " select order_item_id, orders_id, item_id, order_price, count from order_item where orders_id in (:orderIds)";
+    private static final String DELETE_ORDER_ITEM_SQL = "delete from order_item where orders_id in (:orderIds)";
+    private static final String DELETE_ORDER_SQL = "delete from orders where order_id in (:orderIds)";
+    private static final String DELETE_DELIVERY_SQL = "delete from delivery where delivery_id in (:deliveryIds)";
+    private static final String DELETE_SUMMARY_SQL = "delete from order_summary where order_id in (:orderIds)";
+
+    private static final String[] TABLES = {
+            "orders", "order_item", "delivery", "orders_archive", "order_item_archive", "delivery_archive"};
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final OrderSearchCache orderSearchCache;
+    private final Counter archivedCounter;
+
+    private final boolean enabled;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final int maxChunks;
+    private final int retentionDays;
+    private final int canceledRetentionDays;
+
+    public OrderArchiver(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         OrderSearchCache orderSearchCache, MeterRegistry meterRegistry,
+                         @Value("${jpashop.order-archive.enabled:true}") boolean enabled,
+                         @Value("${jpashop.order-archive.chunk-size:500}") int chunkSize,
+                         @Value("${jpashop.order-archive.pause-ms:200}") long pauseMillis,
+                         @Value("${jpashop.order-archive.max-chunks:100}") int maxChunks,
+                         @Value("${jpashop.order-archive.retention-days:365}") int retentionDays,
+                         @Value("${jpashop.order-archive.canceled-retention-days:30}") int canceledRetentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        // 청크마다 바로 커밋해서 락을 오래 잡지 않는다
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.orderSearchCache = orderSearchCache;
+        this.archivedCounter = Counter.builder("jpashop.order.archived")
+                .description("archive 테이블로 옮긴 주문 수")
+                .register(meterRegistry);
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+        this.maxChunks = maxChunks;
+        this.retentionDays = retentionDays;
+        this.canceledRetentionDays = canceledRetentionDays;
+    }
+
+    @Scheduled(fixedDelayString = "${jpashop.order-archive.interval-ms:600000}",
+            initialDelayString = "${jpashop.order-archive.initial-delay-ms:60000}")
+    public void archiveScheduled() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        archive(now.minusDays(retentionDays), now.minusDays(canceledRetentionDays), maxChunks, pauseMillis);
+    }
+
+    // orderedBefore 이전 주문 + canceledBefore 이전 취소 주문을 옮긴다. 옮긴 주문 수를 돌려준다
+    public synchronized int archive(LocalDateTime orderedBefore, LocalDateTime canceledBefore, int maxChunks, long pauseMillis) {
+        int moved = 0;
+        for (int chunk = 0; chunk < maxChunks; chunk++) {
+            Integer archived = transactionTemplate.execute(status -> archiveChunk(orderedBefore, canceledBefore));
+            if (archived == null || archived == 0) {
+                break;
+            }
+            moved += archived;
+            if (!pause(pauseMillis)) {
+                break;
+            }
+        }
+        if (moved > 0) {
+            log.info("archived {} orders (ordered before {}, canceled before {})", moved, orderedBefore, canceledBefore);
+        }
+        return moved;
+    }
+
+    private int archiveChunk(LocalDateTime orderedBefore, LocalDateTime canceledBefore) {
+        MapSqlParameterSource targetParams = new MapSqlParameterSource()
+                .addValue("orderedBefore", Timestamp.valueOf(orderedBefore))
+                .addValue("canceledBefore", Timestamp.valueOf(canceledBefore))
+                .addValue("limit", chunkSize);
+        List<long[]> targets = jdbcTemplate.query(SELECT_TARGETS_SQL, targetParams,
+                (rs, rowNum) -> new long[]{rs.getLong("order_id"), rs.getLong("delivery_id")});
+        if (targets.isEmpty()) {
+            return 0;
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("orderIds", targets.stream().map(t -> t[0]).collect(toList()))
+                .addValue("deliveryIds", targets.stream().map(t -> t[1]).collect(toList()))
+                .addValue("archivedAt", Timestamp.valueOf(LocalDateTime.now()));
+        List<String> memberNames = jdbcTemplate.queryForList(SELECT_MEMBER_NAMES_SQL, params, String.class);
+
+        jdbcTemplate.update(COPY_DELIVERY_SQL, params);
+        jdbcTemplate.update(COPY_ORDER_SQL, params);
+        jdbcTemplate.update(COPY_ORDER_ITEM_SQL, params);
+        // orders 가 delivery 를 참조하므로 order_item -> orders -> delivery 순서로 지운다
+        jdbcTemplate.update(DELETE_ORDER_ITEM_SQL, params);
+        jdbcTemplate.update(DELETE_ORDER_SQL, params);
+        jdbcTemplate.update(DELETE_DELIVERY_SQL, params);
+        jdbcTemplate.update(DELETE_SUMMARY_SQL, params);
+
+        // hot 검색 결과에서는 빠지고 history 검색 결과에는 들어간다
+        orderSearchCache.ordersChanged(memberNames, OrderStatus.ORDER, OrderStatus.CANCEL);
+        archivedCounter.increment(targets.size());
+        return targets.size();
+    }
+
+    // hot / archive 테이블 row 수. archive 로 hot 테이블이 얼마나 줄었는지 본다
+    public Map<String, Long> tableSizes() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (String table : TABLES) {
+            sizes.put(table, jdbcTemplate.getJdbcTemplate().queryForObject("select count(*) from " + table, Long.class));
+        }
+        return sizes;
+    }
+
+    private boolean pause(long millis) {
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -1,47 +1,181 @@
 package jpabook.jpashop.service;
 
 import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.DeliveryStatus;
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.OrderStatus;
 import jpabook.jpashop.domain.item.Item;
-import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.exception.NoSuchEntityException;
 import jpabook.jpashop.repository.MemberRepository;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.order.query.OrderCancelTarget;
+import jpabook.jpashop.service.query.OrderSearchCache;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
 @Service
 public class OrderService {
 
+    private static final int INGEST_BATCH_SIZE = 1000;
+
     private final OrderRepository orderRepository;
     private final MemberRepository memberRepository;
-    private final ItemRepository itemRepository;
+    private final StockService stockService;
+    private final OrderSearchCache orderSearchCache;
+    private final EntityManager em;
 
     @Transactional
     public Long order(Long memberId, Long itemId, int count) {
         Member member = memberRepository.findById(memberId).orElse(null);
-        Item item = itemRepository.findById(itemId).orElse(null);
-        OrderItem orderItem = OrderItem.createOrderItem(item, item.getPrice(), count);
+        Item item = stockService.reserve(itemId, count);
+        OrderItem orderItem = OrderItem.createReservedOrderItem(item, item.getPrice(), count);
         Delivery delivery = new Delivery();
         delivery.setAddress(member.getAddress());
 
         Order order = Order.createOrder(member, delivery, orderItem);
 
         orderRepository.save(order);
+        orderSearchCache.orderChanged(member.getName(), OrderStatus.ORDER);
+        return order.getId();
+    }
+
+    // 장바구니 주문 : 상품 수와 상관없이 상품 조회 1번, 재고 차감 batch 1번, insert batch
+    @Transactional
+    public Long orderCart(Long memberId, Map<Long, Integer> itemCounts) {
+        Member member = memberRepository.findById(memberId)
+                .orElseThrow(() -> new NoSuchEntityException("없는 회원입니다. memberId=" + memberId));
+        Map<Long, Item> items = stockService.reserveAll(itemCounts);
+
+        OrderItem[] orderItems = new TreeMap<>(itemCounts).entrySet().stream()
+                .map(e -> {
+                    Item item = items.get(e.getKey());
+                    return OrderItem.createReservedOrderItem(item, item.getPrice(), e.getValue());
+                })
+                .toArray(OrderItem[]::new);
+        Delivery delivery = new Delivery();
+        delivery.setAddress(member.getAddress());
+
+        Order order = Order.createOrder(member, delivery, orderItems);
+
+        orderRepository.save(order);
+        orderSearchCache.orderChanged(member.getName(), OrderStatus.ORDER);
         return order.getId();
     }
 
+    // 대량 주문 적재. 회원/상품 조회 각 1번, 재고 차감 batch 1번,
+    // insert 는 pooled-lo 시퀀스 + JDBC batch 로 INGEST_BATCH_SIZE 건씩 묶어서 보낸다
+    @Transactional
+    public int ingest(List<OrderLine> lines) {
+        Set<Long> memberIds = lines.stream().map(OrderLine::getMemberId).collect(toSet());
+        Map<Long, Member> members = memberRepository.findAllById(memberIds)
+                .stream()
+                .collect(toMap(Member::getId, member -> member));
+        // 재고를 건드리기 전에 회원부터 본다. 없는 상품은 reserveAll 이 재고 부족과 구분해서 알려준다
+        rejectMissing("회원", memberIds, members.keySet());
+        Map<Long, Integer> itemCounts = lines.stream()
+                .collect(toMap(OrderLine::getItemId, OrderLine::getCount, Integer::sum));
+        Map<Long, Item> items = stockService.reserveAll(itemCounts);
+        rejectMissing("상품", itemCounts.keySet(), items.keySet());
+
+        members.values().forEach(member -> orderSearchCache.orderChanged(member.getName(), OrderStatus.ORDER));
+
+        em.unwrap(Session.class).setJdbcBatchSize(INGEST_BATCH_SIZE);
+        int count = 0;
+        for (OrderLine line : lines) {
+            Member member = members.get(line.getMemberId());
+            Item item = items.get(line.getItemId());
+            OrderItem orderItem = OrderItem.createReservedOrderItem(item, item.getPrice(), line.getCount());
+            Delivery delivery = new Delivery();
+            delivery.setAddress(member.getAddress());
+
+            orderRepository.save(Order.createOrder(member, delivery, orderItem));
+
+            if (++count % INGEST_BATCH_SIZE == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+        return count;
+    }
+
+    // 주문을 하나라도 만들기 전에 없는 id 를 모아서 한번에 알려준다
+    private static void rejectMissing(String name, Set<Long> requested, Set<Long> found) {
+        List<Long> missing = requested.stream()
+                .filter(id -> !found.contains(id))
+                .sorted()
+                .collect(toList());
+        if (!missing.isEmpty()) {
+            throw new NoSuchEntityException("없는 " + name + "입니다. ids=" + missing);
+        }
+    }
+
     @Transactional
     public void cancelOrder(Long orderId) {
         Order order = orderRepository.findById(orderId).orElse(null);
-        order.cancel();
+        order.markCanceled();
+        for (OrderItem orderItem : order.getOrderItems()) {
+            stockService.release(orderItem.getItem().getId(), orderItem.getCount());
+        }
+        orderSearchCache.orderChanged(order.getMember().getName(), OrderStatus.ORDER, OrderStatus.CANCEL);
+    }
+
+    // 대량 취소 (잘못된 프로모션 롤백 등). 주문 수와 상관없이 검증 select 1번 (512 개 청크당),
+    // 주문 / order_summary 상태 update batch, 재고 복구는 상품당 update 1번. 주문 엔티티는 로딩하지 않는다
+    @Transactional
+    public BulkCancelResult cancelOrders(Collection<Long> orderIds) {
+        // id 오름차순으로 잠가서 동시에 도는 대량 취소끼리 데드락이 나지 않게 한다
+        List<Long> requested = new ArrayList<>(new TreeSet<>(orderIds));
+        Map<Long, OrderCancelTarget> targets = orderRepository.findCancelTargets(requested).stream()
+                .collect(toMap(OrderCancelTarget::getOrderId, target -> target));
+
+        List<Long> cancelable = new ArrayList<>();
+        List<Long> alreadyCanceled = new ArrayList<>();
+        List<Long> delivered = new ArrayList<>();
+        List<Long> notFound = new ArrayList<>();
+        for (Long orderId : requested) {
+            OrderCancelTarget target = targets.get(orderId);
+            if (target == null) {
+                notFound.add(orderId);
+            } else if (target.getDeliveryStatus() == DeliveryStatus.COMP) {
+                delivered.add(orderId);
+            } else if (target.getOrderStatus() == OrderStatus.CANCEL) {
+                alreadyCanceled.add(orderId);
+            } else {
+                cancelable.add(orderId);
+            }
+        }
+
+        List<Long> canceled = orderRepository.cancelAll(cancelable);
+        stockService.releaseAll(orderRepository.sumItemCounts(canceled));
+
+        orderSearchCache.ordersChanged(canceled.stream()
+                .map(orderId -> targets.get(orderId).getMemberName())
+                .collect(toSet()), OrderStatus.ORDER, OrderStatus.CANCEL);
+
+        List<Long> changedConcurrently = new ArrayList<>(cancelable);
+        changedConcurrently.removeAll(new HashSet<>(canceled));
+        return new BulkCancelResult(canceled.size(), alreadyCanceled, delivered, notFound, changedConcurrently);
     }
 
     public List<Order> findOrders(OrderSearch orderSearch) {
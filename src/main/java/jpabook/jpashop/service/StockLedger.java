@@ -0,0 +1,299 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.domain.item.StockLedgerEntry;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.repository.StockLedgerEntryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * StockPolicy.LEDGER 상품의 인메모리 재고 원장.
+ *
+ * 재고 차감 판단은 스트라이프로 나눈 AtomicInteger 에서 CAS 로 끝내고 item row 는 건드리지 않는다.
+ * 증감분은 주문 트랜잭션 안에서 stock_ledger_entry 에 insert 만 하고, flushAll() 이 주기적으로 모아서 item 에 반영한다.
+ *
+ * - 초과판매 없음 : 각 스트라이프는 0 밑으로 내려가지 않고, 재고 반환은 커밋 후에만 메모리에 더한다.
+ * - 재시작 복구 : 메모리 값은 item.stock_quantity + 미반영 저널 합계로 다시 시드하므로 잃어버리는 증감분이 없다.
+ * - 상품별 read/write lock : 주문 트랜잭션은 끝날 때까지 read lock 을 잡는다. 시드 / 재설정은 write lock 으로
+ *   진행 중인 주문이 끝나길 기다린 뒤 커밋된 값만 읽으므로, 메모리에서 빠졌지만 아직 커밋 안 된 차감분을 놓치지 않는다.
+ * - 단일 인스턴스 기준이다. 여러 인스턴스가 같은 상품을 팔면 DIRECT 정책을 써야 한다.
+ */
+@Slf4j
+@Component
+public class StockLedger {
+
+    private static final int STRIPES = 16;
+    private static final long LOCK_TIMEOUT_SECONDS = 10;
+
+    private final StockLedgerEntryRepository entryRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransactionTemplate transactionTemplate;
+
+    private final ConcurrentMap<Long, StripedStock> stocks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
+
+    public StockLedger(StockLedgerEntryRepository entryRepository, JdbcTemplate jdbcTemplate,
+                       EntityManagerFactory entityManagerFactory, PlatformTransactionManager transactionManager) {
+        this.entryRepository = entryRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+        // flush 는 호출한 트랜잭션과 무관하게 바로 커밋되어야 같은 저널을 두번 반영하지 않는다
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // 정책을 되돌리기 전에 남은 저널을 item 에 모두 반영한다. item 엔티티를 로딩하기 전에 호출해야 한다
+    // 진행 중인 주문이 끝나길 기다려 반영하고, 카운터는 이 트랜잭션이 끝날 때 뺀다
+    public void retire(Long itemId) {
+        ReentrantReadWriteLock lock = writeLocked(itemId);
+        flushAll();
+        afterCompletion(lock.writeLock(), status -> stocks.remove(itemId));
+    }
+
+    // 관리자가 item.stock_quantity 를 직접 바꾸는 트랜잭션 안에서 호출한다.
+    // 진행 중인 주문이 끝나길 기다려 저널을 item 에 모두 반영해 두어야 새로 쓰는 값 위에 같은 증감분이 다시 더해지지 않는다.
+    // 이 트랜잭션이 끝날 때까지 이 상품 주문은 기다리고, 기존 카운터는 커밋된 값으로 다시 시드한 카운터로 바꿀 때까지 남겨둔다
+    public void invalidate(Long itemId) {
+        ReentrantReadWriteLock lock = writeLocked(itemId);
+        flushAll();
+        afterCompletion(lock.writeLock(), status -> {
+            try {
+                stocks.put(itemId, transactionTemplate.execute(s -> seed(itemId)));
+            } catch (RuntimeException e) {
+                // 다음 주문이 다시 시드한다
+                stocks.remove(itemId);
+                log.warn("stock ledger reseed failed. itemId={}", itemId, e);
+            }
+        });
+    }
+
+    // 호출하는 트랜잭션 안에서 실행. 롤백되면 메모리 차감분을 되돌린다
+    public void reserve(Long itemId, int count) {
+        ReentrantReadWriteLock lock = lockOf(itemId);
+        StripedStock stock = readLocked(itemId, lock);
+        if (!stock.tryTake(count)) {
+            lock.readLock().unlock();
+            throw new NotEnoughStockException("need more stock");
+        }
+        afterCompletion(lock.readLock(), status -> {
+            if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+                stock.put(count);
+            }
+        });
+        entryRepository.save(new StockLedgerEntry(itemId, -count));
+    }
+
+    // 메모리에는 커밋 후에 더한다. 카운터가 없으면 다음 시드가 커밋된 저널에서 읽는다
+    public void release(Long itemId, int count) {
+        ReentrantReadWriteLock lock = lockOf(itemId);
+        acquire(lock.readLock());
+        afterCompletion(lock.readLock(), status -> {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                StripedStock stock = stocks.get(itemId);
+                if (stock != null) {
+                    stock.put(count);
+                }
+            }
+        });
+        entryRepository.save(new StockLedgerEntry(itemId, count));
+    }
+
+    public int available(Long itemId) {
+        StripedStock stock = stocks.get(itemId);
+        return (stock != null ? stock : seedIfAbsent(itemId, lockOf(itemId))).available();
+    }
+
+    @Scheduled(fixedDelayString = "${jpashop.stock-ledger.flush-interval-ms:1000}")
+    public synchronized void flushAll() {
+        Set<Long> flushedItemIds;
+        do {
+            flushedItemIds = transactionTemplate.execute(status -> flushBatch());
+            // JDBC 로 바꾼 item 은 2차 캐시에서 직접 빼준다
+            flushedItemIds.forEach(itemId -> entityManagerFactory.getCache().evict(Item.class, itemId));
+        } while (!flushedItemIds.isEmpty());
+    }
+
+    // 저널을 최대 1000건씩 읽어 상품별 순증감으로 합친 뒤 update 를 batch 로 보내고, 읽은 저널만 정확히 지운다
+    private Set<Long> flushBatch() {
+        List<StockLedgerEntry> entries = entryRepository.findTop1000ByOrderByIdAsc();
+        if (entries.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Map<Long, Integer> netDeltas = new LinkedHashMap<>();
+        for (StockLedgerEntry entry : entries) {
+            netDeltas.merge(entry.getItemId(), entry.getDelta(), Integer::sum);
+        }
+
+        List<Object[]> args = new ArrayList<>(netDeltas.size());
+        netDeltas.forEach((itemId, delta) -> args.add(new Object[]{delta, itemId}));
+        jdbcTemplate.batchUpdate("update item set stock_quantity = stock_quantity + ? where item_id = ?", args);
+        entryRepository.deleteInBatch(entries);
+
+        log.debug("stock ledger flushed {} entries into {} items", entries.size(), netDeltas.size());
+        return netDeltas.keySet();
+    }
+
+    private ReentrantReadWriteLock lockOf(Long itemId) {
+        return locks.computeIfAbsent(itemId, id -> new ReentrantReadWriteLock());
+    }
+
+    // read lock 을 잡은 상태로 카운터를 돌려준다. 없으면 write lock 으로 시드하고 다시 read lock 을 잡는다
+    private StripedStock readLocked(Long itemId, ReentrantReadWriteLock lock) {
+        while (true) {
+            acquire(lock.readLock());
+            StripedStock stock = stocks.get(itemId);
+            if (stock != null) {
+                return stock;
+            }
+            lock.readLock().unlock();
+            seedIfAbsent(itemId, lock);
+        }
+    }
+
+    // 진행 중인 주문 트랜잭션이 없을 때 커밋된 값만 읽어야 메모리와 DB 가 맞는다 -> write lock + 별도 트랜잭션
+    private StripedStock seedIfAbsent(Long itemId, ReentrantReadWriteLock lock) {
+        StripedStock stock = stocks.get(itemId);
+        if (stock != null) {
+            return stock;
+        }
+        writeLocked(itemId, lock);
+        try {
+            return stocks.computeIfAbsent(itemId, id -> transactionTemplate.execute(s -> seed(id)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private StripedStock seed(Long itemId) {
+        Number available = entryRepository.findAvailableStock(itemId);
+        return new StripedStock(STRIPES, available == null ? 0 : available.intValue());
+    }
+
+    private ReentrantReadWriteLock writeLocked(Long itemId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("재고 원장 재설정은 트랜잭션 안에서 호출해야 합니다");
+        }
+        ReentrantReadWriteLock lock = lockOf(itemId);
+        writeLocked(itemId, lock);
+        return lock;
+    }
+
+    // read lock 을 든 채로 write lock 을 기다리면 영원히 못 얻는다
+    private void writeLocked(Long itemId, ReentrantReadWriteLock lock) {
+        if (lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException("이 트랜잭션에서 주문한 상품의 재고 원장은 재설정할 수 없습니다. itemId=" + itemId);
+        }
+        acquire(lock.writeLock());
+    }
+
+    private static void acquire(Lock lock) {
+        try {
+            if (!lock.tryLock(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("재고 원장 잠금을 얻지 못했습니다");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("재고 원장 잠금을 기다리다 중단되었습니다", e);
+        }
+    }
+
+    // 트랜잭션이 끝나면 callback 후 잠금을 푼다. 잠금은 트랜잭션 안에서만 잡으므로 동기화가 없으면 바로 풀어준다
+    private void afterCompletion(Lock lock, IntConsumer callback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            lock.unlock();
+            throw new IllegalStateException("재고 원장은 트랜잭션 안에서 호출해야 합니다");
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    callback.accept(status);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    static class StripedStock {
+
+        private final AtomicInteger[] stripes;
+
+        StripedStock(int stripeCount, int available) {
+            stripes = new AtomicInteger[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                int share = available / stripeCount + (i < available % stripeCount ? 1 : 0);
+                stripes[i] = new AtomicInteger(share);
+            }
+        }
+
+        // 자기 스트라이프부터 돌며 모자란 만큼 가져온다. 다 못 모으면 가져온 만큼 돌려놓고 실패
+        boolean tryTake(int count) {
+            int home = home();
+            int taken = 0;
+            for (int i = 0; i < stripes.length && taken < count; i++) {
+                taken += takeUpTo(stripes[(home + i) % stripes.length], count - taken);
+            }
+            if (taken < count) {
+                stripes[home].addAndGet(taken);
+                return false;
+            }
+            return true;
+        }
+
+        void put(int count) {
+            stripes[home()].addAndGet(count);
+        }
+
+        int available() {
+            int sum = 0;
+            for (AtomicInteger stripe : stripes) {
+                sum += stripe.get();
+            }
+            return sum;
+        }
+
+        private int takeUpTo(AtomicInteger stripe, int wanted) {
+            while (true) {
+                int current = stripe.get();
+                if (current <= 0) {
+                    return 0;
+                }
+                int take = Math.min(current, wanted);
+                if (stripe.compareAndSet(current, current - take)) {
+                    return take;
+                }
+            }
+        }
+
+        private int home() {
+            return (int) (Thread.currentThread().getId() % stripes.length);
+        }
+    }
+}
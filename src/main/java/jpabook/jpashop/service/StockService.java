@@ -0,0 +1,251 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.domain.item.StockPolicy;
+import jpabook.jpashop.exception.NoSuchEntityException;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.repository.ItemRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * 상품의 StockPolicy 에 따라 재고 차감/복구 경로를 고른다.
+ * 주문마다 item 을 읽지 않도록 DIRECT 가 아닌 상품의 정책만 메모리에 들고 있는다.
+ *
+ * - 메모리 정책은 정책을 바꾼 트랜잭션이 커밋된 뒤에 바꾼다. 롤백되면 DB 와 같이 이전 정책으로 남는다.
+ * - 기준은 item.stock_policy 다. DIRECT 차감 SQL 은 stock_policy = 'DIRECT' 인 row 만 줄이고, 차감이 실패하면
+ *   row 의 정책을 다시 읽어 메모리와 다르면 고쳐서 맞는 경로로 다시 보낸다. 샤드 차감 실패도 같다.
+ *   다른 인스턴스가 바꾼 정책은 이렇게 첫 주문에서, 늦어도 reload 주기(jpashop.stock-policy.reload-interval-ms) 안에 반영된다.
+ * - LEDGER 는 재고 카운터가 프로세스 메모리에 있으므로 인스턴스 하나에서만 쓸 수 있다.
+ *   인스턴스가 여럿이면 각자 원장을 시드해 초과 판매되므로 DIRECT / SHARDED 만 쓴다.
+ */
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+@Service
+public class StockService {
+
+    private final ItemRepository itemRepository;
+    private final StockLedger stockLedger;
+    private final StockShards stockShards;
+
+    private final Map<Long, StockPolicy> policies = new ConcurrentHashMap<>();
+
+    // 정책을 놓치면 재고 차감 경로가 바뀌므로 복제 지연이 있는 replica 가 아니라 primary 에서 읽는다
+    @Transactional
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${jpashop.stock-policy.reload-interval-ms:5000}")
+    public void loadPolicies() {
+        Map<Long, StockPolicy> loaded = new HashMap<>();
+        for (StockPolicy policy : StockPolicy.values()) {
+            if (policy != StockPolicy.DIRECT) {
+                itemRepository.findIdsByStockPolicy(policy).forEach(id -> loaded.put(id, policy));
+            }
+        }
+        policies.keySet().retainAll(loaded.keySet());
+        policies.putAll(loaded);
+    }
+
+    public StockPolicy policyOf(Long itemId) {
+        return policies.getOrDefault(itemId, StockPolicy.DIRECT);
+    }
+
+    @Transactional
+    public Item reserve(Long itemId, int count) {
+        StockPolicy policy = policyOf(itemId);
+        try {
+            return reserve(policy, itemId, count);
+        } catch (NotEnoughStockException e) {
+            StockPolicy actual = reloadPolicy(itemId);
+            if (actual == null || actual == policy) {
+                throw e;
+            }
+            // 실패한 차감은 아무것도 바꾸지 않았으므로 row 의 정책으로 다시 보낸다
+            return reserve(actual, itemId, count);
+        }
+    }
+
+    private Item reserve(StockPolicy policy, Long itemId, int count) {
+        switch (policy) {
+            case LEDGER:
+                stockLedger.reserve(itemId, count);
+                return itemRepository.getOne(itemId);
+            case SHARDED:
+                stockShards.reserve(itemId, count);
+                return itemRepository.getOne(itemId);
+            default:
+                return itemRepository.decreaseStock(itemId, count);
+        }
+    }
+
+    // 여러 상품을 한번에 차감 (장바구니). DIRECT 상품은 item_id 오름차순 JDBC batch 한번,
+    // 나머지는 item row 락을 잡지 않으므로 그 뒤에 오름차순으로 처리한다. 상품 로딩은 findAllById 한번
+    @Transactional
+    public Map<Long, Item> reserveAll(Map<Long, Integer> itemCounts) {
+        SortedMap<Long, Integer> sorted = new TreeMap<>(itemCounts);
+        SortedMap<Long, Integer> direct = new TreeMap<>();
+        sorted.forEach((itemId, count) -> {
+            if (policyOf(itemId) == StockPolicy.DIRECT) {
+                direct.put(itemId, count);
+            }
+        });
+
+        // 조건부 update 는 재고 부족 / 없는 상품 / DIRECT 가 아닌 상품 모두 0 row 다. 실패한 상품만 row 의 정책을 다시 읽어 구분한다
+        Map<Long, StockPolicy> rerouted = new TreeMap<>();
+        List<Long> missing = new ArrayList<>();
+        boolean notEnough = false;
+        for (Long itemId : itemRepository.decreaseStocks(direct)) {
+            StockPolicy actual = reloadPolicy(itemId);
+            if (actual == null) {
+                missing.add(itemId);
+            } else if (actual == StockPolicy.DIRECT) {
+                notEnough = true;
+            } else {
+                rerouted.put(itemId, actual);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new NoSuchEntityException("없는 상품입니다. itemIds=" + missing);
+        }
+        if (notEnough) {
+            throw new NotEnoughStockException("need more stock");
+        }
+
+        sorted.forEach((itemId, count) -> {
+            if (rerouted.containsKey(itemId)) {
+                reserve(rerouted.get(itemId), itemId, count);
+            } else if (!direct.containsKey(itemId)) {
+                reserve(itemId, count);
+            }
+        });
+
+        List<Item> items = itemRepository.findAllById(sorted.keySet());
+        return items.stream()
+                .collect(toMap(Item::getId, item -> item));
+    }
+
+    // item row 의 정책을 읽어 메모리에 반영한다. 없는 상품이면 null
+    private StockPolicy reloadPolicy(Long itemId) {
+        StockPolicy actual = itemRepository.findStockPolicy(itemId).orElse(null);
+        if (actual != null) {
+            applyPolicy(itemId, actual);
+        }
+        return actual;
+    }
+
+    private void applyPolicy(Long itemId, StockPolicy stockPolicy) {
+        // 롤백되면 메모리 정책도 그대로 두어야 DB 와 어긋나지 않는다
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                applyPolicy(itemId, stockPolicy);
+            }
+        });
+    }
+
+    @Transactional
+    public void release(Long itemId, int count) {
+        switch (policyOf(itemId)) {
+            case LEDGER:
+                stockLedger.release(itemId, count);
+                break;
+            case SHARDED:
+                stockShards.release(itemId, count);
+                break;
+            default:
+                itemRepository.increaseStock(itemId, count);
+        }
+    }
+
+    // 여러 상품 재고 복구 (대량 취소). DIRECT 상품은 item_id 오름차순 JDBC batch 한번, 나머지는 원장 / 샤드에 상품별로 돌려준다
+    @Transactional
+    public void releaseAll(Map<Long, Integer> itemCounts) {
+        SortedMap<Long, Integer> direct = new TreeMap<>();
+        new TreeMap<>(itemCounts).forEach((itemId, count) -> {
+            if (policyOf(itemId) == StockPolicy.DIRECT) {
+                direct.put(itemId, count);
+            } else {
+                release(itemId, count);
+            }
+        });
+        itemRepository.increaseStocks(direct);
+    }
+
+    public int available(Long itemId) {
+        switch (policyOf(itemId)) {
+            case LEDGER:
+                return stockLedger.available(itemId);
+            case SHARDED:
+                return stockShards.available(itemId);
+            default:
+                return itemRepository.findById(itemId).map(Item::getStockQuantity).orElse(0);
+        }
+    }
+
+    // 상품 목록 화면용. DIRECT 는 이미 읽은 item.stock_quantity, 나머지(소수의 인기 상품)는 샤드 합 / 원장에서 상품별로 읽는다
+    public Map<Long, Integer> availableAll(List<Item> items) {
+        Map<Long, Integer> stocks = new HashMap<>();
+        for (Item item : items) {
+            stocks.put(item.getId(), policyOf(item.getId()) == StockPolicy.DIRECT ? item.getStockQuantity() : available(item.getId()));
+        }
+        return stocks;
+    }
+
+    // 판매를 멈춘 상태에서 하는 운영 작업. 기존 정책의 재고를 item.stock_quantity 로 모은 뒤 새 정책으로 나눈다
+    @Transactional
+    public void changePolicy(Long itemId, StockPolicy stockPolicy) {
+        StockPolicy current = policyOf(itemId);
+        if (current == stockPolicy) {
+            return;
+        }
+        if (current == StockPolicy.LEDGER) {
+            stockLedger.retire(itemId);
+        }
+
+        Item item = itemRepository.findById(itemId).orElse(null);
+        if (current == StockPolicy.SHARDED) {
+            stockShards.merge(item);
+        }
+        item.setStockPolicy(stockPolicy);
+        if (stockPolicy == StockPolicy.SHARDED) {
+            stockShards.split(item);
+        }
+
+        // 롤백되면 메모리 정책도 그대로 두어야 DB 와 어긋나지 않는다
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                applyPolicy(itemId, stockPolicy);
+            }
+        });
+    }
+
+    // 관리자가 item.stock_quantity 를 직접 바꾼 뒤 호출
+    @Transactional
+    public void stockUpdated(Item item) {
+        switch (policyOf(item.getId())) {
+            case LEDGER:
+                stockLedger.invalidate(item.getId());
+                break;
+            case SHARDED:
+                stockShards.split(item);
+                break;
+            default:
+        }
+    }
+}
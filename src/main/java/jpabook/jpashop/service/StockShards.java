@@ -0,0 +1,97 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.domain.item.ItemStockShard;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.repository.ItemStockShardRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * StockPolicy.SHARDED 상품의 재고를 item_stock_shard N 개 row 에 나눠 관리한다.
+ *
+ * 차감은 임의의 샤드 하나에 조건부 update 를 보내므로 동시 주문이 서로 다른 row 락을 잡는다.
+ * 샤드 하나로는 모자라는 경우에만 샤드 전체를 잠그고 나눠서 차감한다.
+ * 호출하는 트랜잭션 안에서 실행된다.
+ */
+@Component
+public class StockShards {
+
+    // 혼자 감당할 수 있는 샤드를 찾기 위해 시도할 횟수. 다 실패하면 전체 잠금 경로로 간다
+    private static final int PROBES = 3;
+
+    private final ItemStockShardRepository shardRepository;
+    private final int shardCount;
+
+    public StockShards(ItemStockShardRepository shardRepository,
+                       @Value("${jpashop.stock-shard.count:16}") int shardCount) {
+        this.shardRepository = shardRepository;
+        this.shardCount = shardCount;
+    }
+
+    public void reserve(Long itemId, int count) {
+        int start = ThreadLocalRandom.current().nextInt(shardCount);
+        for (int i = 0; i < Math.min(PROBES, shardCount); i++) {
+            if (shardRepository.decreaseQuantity(itemId, (start + i) % shardCount, count) == 1) {
+                return;
+            }
+        }
+
+        List<ItemStockShard> shards = shardRepository.findAllForUpdate(itemId);
+        int total = shards.stream().mapToInt(ItemStockShard::getQuantity).sum();
+        if (total < count) {
+            throw new NotEnoughStockException("need more stock");
+        }
+        int remaining = count;
+        for (ItemStockShard shard : shards) {
+            int take = Math.min(shard.getQuantity(), remaining);
+            shard.removeQuantity(take);
+            remaining -= take;
+            if (remaining == 0) {
+                break;
+            }
+        }
+    }
+
+    // split 이후 샤드 수 설정이 바뀌었으면 고른 샤드가 없을 수 있다. 그때는 실제로 있는 샤드 중 하나에 돌려준다
+    public void release(Long itemId, int count) {
+        if (shardRepository.increaseQuantity(itemId, ThreadLocalRandom.current().nextInt(shardCount), count) == 1) {
+            return;
+        }
+        List<Integer> shardNos = shardRepository.findShardNos(itemId);
+        if (shardNos.isEmpty()) {
+            throw new IllegalStateException("재고 샤드가 없는 상품입니다. itemId=" + itemId);
+        }
+        int shardNo = shardNos.get(ThreadLocalRandom.current().nextInt(shardNos.size()));
+        if (shardRepository.increaseQuantity(itemId, shardNo, count) != 1) {
+            throw new IllegalStateException("재고 샤드를 찾지 못했습니다. itemId=" + itemId + ", shardNo=" + shardNo);
+        }
+    }
+
+    public int available(Long itemId) {
+        return (int) shardRepository.sumQuantity(itemId);
+    }
+
+    // item.stock_quantity 를 샤드로 나누고 item 쪽은 0 으로 둔다 (이중 계산 방지)
+    public void split(Item item) {
+        shardRepository.deleteByItemId(item.getId());
+
+        int stock = item.getStockQuantity();
+        List<ItemStockShard> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new ItemStockShard(item.getId(), i, stock / shardCount + (i < stock % shardCount ? 1 : 0)));
+        }
+        shardRepository.saveAll(shards);
+        item.setStockQuantity(0);
+    }
+
+    // 샤드 재고를 item.stock_quantity 로 되돌린다
+    public void merge(Item item) {
+        item.addStock(available(item.getId()));
+        shardRepository.deleteByItemId(item.getId());
+    }
+}
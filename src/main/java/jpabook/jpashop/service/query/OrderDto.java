@@ -24,6 +24,7 @@ public class OrderDto {
         this.orderId = order.getId();
         this.name = order.getMember().getName();
         this.orderDate = order.getOrderDate();
+        this.orderStatus = order.getStatus();
         this.address = order.getDelivery().getAddress();
         order.getOrderItems().forEach(o -> o.getItem().getName());
         this.orderItems = order.getOrderItems().stream()
@@ -3,11 +3,15 @@ package jpabook.jpashop.service.query;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.order.query.OrderRowHandler;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static java.util.stream.Collectors.toList;
 
@@ -17,7 +21,11 @@ import static java.util.stream.Collectors.toList;
 @Transactional(readOnly = true)
 public class OrderQueryService {
 
+    // default_batch_fetch_size 와 맞춰 청크당 orderItems / item 을 in 쿼리 한번씩으로 초기화
+    private static final int EXPORT_CHUNK_SIZE = 100;
+
     private final OrderRepository orderRepository;
+    private final EntityManager em;
 
     public List<OrderDto> ordersV2_OSIV() {
         List<Order> orders = orderRepository.findAllByQuerydsl(new OrderSearch());
@@ -26,4 +34,33 @@ public class OrderQueryService {
                 .map(OrderDto::new)
                 .collect(toList());
     }
+
+    // 응답 스트리밍용. open-in-view 가 꺼져 있으므로 row 를 다 흘려보낼 때까지 트랜잭션을 잡고 있는다
+    public void streamOrders(OrderSearch orderSearch, int offset, int limit, OrderRowHandler handler) {
+        orderRepository.streamOrderQueryRows(offset, limit, orderSearch, handler);
+    }
+
+    public void streamSimpleOrders(OrderSearch orderSearch, int offset, int limit, OrderRowHandler handler) {
+        orderRepository.streamSummaryRows(offset, limit, orderSearch, handler);
+    }
+
+    // 청크 단위로 DTO 변환 후 바로 넘기고 영속성 컨텍스트를 비운다 -> 메모리는 청크 크기만큼만 사용
+    public void exportOrders(OrderSearch orderSearch, Consumer<OrderDto> consumer) {
+        List<Order> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+        orderRepository.scrollAllWithMemberDeliveryByQuerydsl(orderSearch, EXPORT_CHUNK_SIZE, order -> {
+            chunk.add(order);
+            if (chunk.size() == EXPORT_CHUNK_SIZE) {
+                flushChunk(chunk, consumer);
+            }
+        });
+        flushChunk(chunk, consumer);
+    }
+
+    private void flushChunk(List<Order> chunk, Consumer<OrderDto> consumer) {
+        chunk.stream()
+                .map(OrderDto::new)
+                .forEach(consumer);
+        chunk.clear();
+        em.clear();
+    }
 }
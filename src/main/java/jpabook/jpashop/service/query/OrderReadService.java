@@ -0,0 +1,175 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.order.query.OrderItemQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * 주문 목록 조회 전략(v3.2 / v3.1 / v5 / v6)을 요청마다 고른다.
+ *
+ * 1. 주문당 평균 아이템 수로 후보 전략을 거른다.
+ *    페이지 크기로는 거르지 않는다. in 절을 쓰는 전략(v3.2 / v5 / v6)은 InListLoader 가 id 를 청크로 나누므로 limit 이 커도 파라미터 한계를 넘지 않는다.
+ * 2. 후보 중 관측된 주문 1건당 지연시간(EWMA)이 가장 낮은 전략을 쓴다.
+ *    아직 안 써본 후보가 있으면 먼저 써보고, EXPLORE_EVERY 번에 한번은 임의 후보를 다시 측정해 변화를 따라간다.
+ */
+@Service
+@Transactional(readOnly = true)
+public class OrderReadService {
+
+    // 주문당 아이템이 이보다 많으면 조인 row 뻥튀기가 커서 fetch join / flat join 은 후보에서 뺀다
+    static final double MAX_JOIN_FAN_OUT = 10;
+    static final int EXPLORE_EVERY = 20;
+    private static final double ALPHA = 0.2;
+
+    private final OrderRepository orderRepository;
+    private final LongSupplier nanoClock;
+    // bound 를 받아 [0, bound) 의 후보 index 를 돌려준다
+    private final IntUnaryOperator randomIndex;
+
+    private final Map<OrderReadStrategy, Ewma> latencyPerOrder = new EnumMap<>(OrderReadStrategy.class);
+    private final Ewma itemsPerOrder = new Ewma(1.0);
+    private final AtomicLong requests = new AtomicLong();
+
+    @Autowired
+    public OrderReadService(OrderRepository orderRepository) {
+        this(orderRepository, System::nanoTime, bound -> ThreadLocalRandom.current().nextInt(bound));
+    }
+
+    // 테스트에서 시계와 탐색 대상을 고정한다
+    OrderReadService(OrderRepository orderRepository, LongSupplier nanoClock, IntUnaryOperator randomIndex) {
+        this.orderRepository = orderRepository;
+        this.nanoClock = nanoClock;
+        this.randomIndex = randomIndex;
+        for (OrderReadStrategy strategy : OrderReadStrategy.values()) {
+            latencyPerOrder.put(strategy, new Ewma(Double.NaN));
+        }
+    }
+
+    public List<OrderQueryDto> findOrders(OrderSearch orderSearch, int offset, int limit) {
+        // 주문 이력(archive)은 v5 경로로만 읽는다. 다른 전략은 hot 테이블만 보고, archive 지연시간은 전략 비교에 섞지 않는다
+        if (orderSearch.isHistory()) {
+            return read(OrderReadStrategy.IN_QUERY, orderSearch, offset, limit);
+        }
+        OrderReadStrategy strategy = choose();
+
+        long start = nanoClock.getAsLong();
+        List<OrderQueryDto> result = read(strategy, orderSearch, offset, limit);
+        long elapsed = nanoClock.getAsLong() - start;
+
+        record(strategy, result, elapsed);
+        return result;
+    }
+
+    OrderReadStrategy choose() {
+        Set<OrderReadStrategy> candidates = candidates();
+
+        for (OrderReadStrategy candidate : candidates) {
+            if (Double.isNaN(latencyPerOrder.get(candidate).get())) {
+                return candidate;
+            }
+        }
+
+        if (requests.incrementAndGet() % EXPLORE_EVERY == 0) {
+            List<OrderReadStrategy> list = new ArrayList<>(candidates);
+            return list.get(randomIndex.applyAsInt(list.size()));
+        }
+
+        OrderReadStrategy best = null;
+        for (OrderReadStrategy candidate : candidates) {
+            if (best == null || latencyPerOrder.get(candidate).get() < latencyPerOrder.get(best).get()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    Set<OrderReadStrategy> candidates() {
+        Set<OrderReadStrategy> candidates = EnumSet.allOf(OrderReadStrategy.class);
+
+        if (itemsPerOrder.get() > MAX_JOIN_FAN_OUT) {
+            candidates.remove(OrderReadStrategy.FETCH_JOIN);
+            candidates.remove(OrderReadStrategy.FLAT_JOIN);
+        }
+        return candidates;
+    }
+
+    public Map<OrderReadStrategy, Double> getLatencyPerOrderNanos() {
+        Map<OrderReadStrategy, Double> snapshot = new EnumMap<>(OrderReadStrategy.class);
+        latencyPerOrder.forEach((strategy, ewma) -> snapshot.put(strategy, ewma.get()));
+        return snapshot;
+    }
+
+    public double getItemsPerOrder() {
+        return itemsPerOrder.get();
+    }
+
+    // 전략이 바뀌어도 같은 페이지가 나오도록 모두 order_id 오름차순으로 페이징한다
+    List<OrderQueryDto> read(OrderReadStrategy strategy, OrderSearch orderSearch, int offset, int limit) {
+        switch (strategy) {
+            case FETCH_JOIN:
+                return toQueryDtos(orderRepository.findAllPageWithItemByQuerydsl(offset, limit, orderSearch));
+            case BATCH_FETCH:
+                return toQueryDtos(orderRepository.findAllPageWithMemberDeliveryByQuerydsl(offset, limit, orderSearch));
+            case FLAT_JOIN:
+                return orderRepository.findOrderQueryDtoFolded(offset, limit, orderSearch);
+            case IN_QUERY:
+            default:
+                return orderRepository.findOrderQueryDtoOptimization(offset, limit, orderSearch);
+        }
+    }
+
+    private List<OrderQueryDto> toQueryDtos(List<Order> orders) {
+        return orders.stream()
+                .map(o -> new OrderQueryDto(o.getId(), o.getMember().getName(), o.getOrderDate(), o.getStatus(), o.getDelivery().getAddress(),
+                        o.getOrderItems().stream()
+                                .map(oi -> new OrderItemQueryDto(o.getId(), oi.getItem().getName(), oi.getOrderPrice(), oi.getCount()))
+                                .collect(toList())))
+                .collect(toList());
+    }
+
+    void record(OrderReadStrategy strategy, List<OrderQueryDto> result, long elapsedNanos) {
+        if (result.isEmpty()) {
+            return;
+        }
+        long items = 0;
+        for (OrderQueryDto order : result) {
+            items += order.getOrderItems() == null ? 0 : order.getOrderItems().size();
+        }
+        itemsPerOrder.update((double) items / result.size());
+        latencyPerOrder.get(strategy).update((double) elapsedNanos / result.size());
+    }
+
+    static class Ewma {
+        private double value;
+
+        Ewma(double initial) {
+            this.value = initial;
+        }
+
+        synchronized void update(double sample) {
+            value = Double.isNaN(value) ? sample : value + ALPHA * (sample - value);
+        }
+
+        synchronized double get() {
+            return value;
+        }
+    }
+}
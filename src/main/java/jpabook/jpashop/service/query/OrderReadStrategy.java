@@ -0,0 +1,8 @@
+package jpabook.jpashop.service.query;
+
+public enum OrderReadStrategy {
+    FETCH_JOIN,   // v3.2 : id 페이징 + 컬렉션 fetch join
+    BATCH_FETCH,  // v3.1 : ToOne fetch join + default_batch_fetch_size
+    IN_QUERY,     // v5   : DTO 조회 + 아이템 in 쿼리
+    FLAT_JOIN     // v6   : id 페이징 + 전부 조인한 row 를 주문 단위로 접기
+}
@@ -0,0 +1,234 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.datasource.ReplicaRoutingDataSource;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.repository.OrderSearch;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * OrderSearch(회원명 + 주문상태) + 페이지 단위 주문 목록 DTO 캐시.
+ *
+ * - 키 : 조회 종류(view) + 정규화한 검색조건(history 포함) + offset / limit. 빈 회원명은 조건 없음과 같은 키가 된다.
+ * - 크기 : maxEntries 를 넘으면 가장 오래 안 쓴 항목부터 버린다 (LRU).
+ * - TTL : 넣은 지 ttlMillis 가 지난 항목은 다시 읽는다. 무효화가 놓친 변경(다른 인스턴스의 쓰기 등)이 보이는 시간의 상한. 0 이면 끈다.
+ * - 무효화 : 주문이 생성/취소/archive 되면 그 주문이 결과에 들어갈 수 있는 키만 커밋 후에 지운다.
+ *   (키의 주문상태가 없거나 같고, 키의 회원명이 없거나 주문한 회원명에 포함될 때)
+ *   아이템명이 바뀌면 어느 주문에 들어 있는지 키로 알 수 없으므로 전부 지운다.
+ *   조회 도중 무효화가 일어났으면 읽은 결과는 캐시에 넣지 않는다.
+ * - replica : 캐시를 채우는 조회는 primary 에서 읽는다. 복제가 늦은 replica 의 이전 결과가 무효화 뒤의 세대로 들어가지 않게.
+ *   이미 readOnly 트랜잭션 안이면 커넥션이 replica 일 수 있으므로 결과를 돌려주기만 하고 캐시에 넣지 않는다.
+ */
+@Component
+public class OrderSearchCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<Key, Entry> entries;
+
+    // 무효화가 일어날 때마다 증가. 조회 시작 시점과 다르면 오래된 결과일 수 있다
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    public OrderSearchCache(@Value("${jpashop.order-search-cache.max-entries:1000}") int maxEntries,
+                            @Value("${jpashop.order-search-cache.ttl-ms:60000}") long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > OrderSearchCache.this.maxEntries) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(String view, OrderSearch orderSearch, int offset, int limit, Supplier<List<T>> loader) {
+        Key key = new Key(view, normalize(orderSearch.getMemberName()), orderSearch.getOrderStatus(), orderSearch.isHistory(), offset, limit);
+
+        synchronized (entries) {
+            Entry cached = entries.get(key);
+            if (cached != null && cached.isExpired(System.nanoTime(), ttlNanos)) {
+                entries.remove(key);
+                expirationCount.incrementAndGet();
+            } else if (cached != null) {
+                hitCount.incrementAndGet();
+                return (List<T>) cached.value;
+            }
+        }
+        missCount.incrementAndGet();
+
+        boolean cacheable = !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        long startGeneration = generation.get();
+        List<T> result = Collections.unmodifiableList(ReplicaRoutingDataSource.readFromPrimary(loader));
+        synchronized (entries) {
+            if (cacheable && generation.get() == startGeneration) {
+                entries.put(key, new Entry(result, System.nanoTime()));
+            }
+        }
+        return result;
+    }
+
+    // 주문 생성 / 취소. 트랜잭션 안이면 커밋된 뒤에 지운다
+    public void orderChanged(String memberName, OrderStatus... statuses) {
+        EnumSet<OrderStatus> changed = EnumSet.noneOf(OrderStatus.class);
+        Collections.addAll(changed, statuses);
+        afterCommit(() -> evictMatching(memberName, changed));
+    }
+
+    // 대량 취소. 회원이 많아도 커밋 후 캐시를 한번만 훑는다
+    public void ordersChanged(Collection<String> memberNames, OrderStatus... statuses) {
+        EnumSet<OrderStatus> changed = EnumSet.noneOf(OrderStatus.class);
+        Collections.addAll(changed, statuses);
+        Set<String> names = new HashSet<>(memberNames);
+        afterCommit(() -> evictMatching(names, changed));
+    }
+
+    // 회원명이 바뀌면 이전 / 새 이름으로 검색한 결과와 회원명 조건 없는 결과가 모두 바뀐다
+    public void memberRenamed(String oldName, String newName) {
+        afterCommit(() -> {
+            evictMatching(oldName, EnumSet.allOf(OrderStatus.class));
+            evictMatching(newName, EnumSet.allOf(OrderStatus.class));
+        });
+    }
+
+    // 아이템명은 v5 결과(OrderItemQueryDto)에 들어간다
+    public void itemRenamed() {
+        afterCommit(() -> {
+            synchronized (entries) {
+                generation.incrementAndGet();
+                invalidationCount.addAndGet(entries.size());
+                entries.clear();
+            }
+        });
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getExpirationCount() {
+        return expirationCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void evictMatching(String memberName, Collection<OrderStatus> statuses) {
+        evictMatching(Collections.singleton(memberName), statuses);
+    }
+
+    private void evictMatching(Collection<String> memberNames, Collection<OrderStatus> statuses) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.keySet().removeIf(key -> {
+                boolean matches = memberNames.stream().anyMatch(memberName -> key.matches(memberName, statuses));
+                if (matches) {
+                    invalidationCount.incrementAndGet();
+                }
+                return matches;
+            });
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        // 커밋 전에 시작한 조회가 이전 값을 넣지 못하도록 세대도 미리 올려둔다
+        generation.incrementAndGet();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static String normalize(String memberName) {
+        return StringUtils.hasText(memberName) ? memberName : null;
+    }
+
+    private static class Entry {
+        private final List<?> value;
+        private final long loadedAt;
+
+        Entry(List<?> value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isExpired(long now, long ttlNanos) {
+            return ttlNanos > 0 && now - loadedAt >= ttlNanos;
+        }
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class Key {
+        private final String view;
+        private final String memberName;
+        private final OrderStatus orderStatus;
+        private final boolean history;
+        private final int offset;
+        private final int limit;
+
+        // 검색조건은 status = ? and member.name like %?% 이다
+        boolean matches(String changedMemberName, Collection<OrderStatus> changedStatuses) {
+            boolean statusMatches = orderStatus == null || changedStatuses.contains(orderStatus);
+            boolean nameMatches = memberName == null || (changedMemberName != null && changedMemberName.contains(memberName));
+            return statusMatches && nameMatches;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package jpabook.jpashop.api;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.monitoring.SqlStatementCounter;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.service.query.OrderSearchCache;
+import jpabook.jpashop.support.QueryCounter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * API 별 SQL 수 / 엔티티 로딩 수 회귀 테스트.
+ * 1+1 로 만든 조회가 1+N 으로 돌아가면 여기서 깨진다. 기준값은 이 데이터(InitDb 주문 2건 + 여기서 만든 9건)로 잰 값이다.
+ * default_batch_fetch_size 100 이라도 Hibernate 기본(legacy) 배치는 11건을 10 + 1 로 나눠 읽는다.
+ *
+ * 다른 테스트가 커밋한 주문이 섞이지 않도록 DB 를 따로 쓴다.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:api-query-count;DB_CLOSE_DELAY=-1")
+@Transactional
+public class ApiQueryCountTest {
+
+    // 주문 1건 = order + member + delivery + orderItem 2 + item 2
+    private static final int ENTITIES_PER_ORDER = 7;
+    private static final int MEMBERS = 3;
+    private static final int ORDERS_PER_MEMBER = 3;
+
+    @Autowired WebApplicationContext context;
+    @Autowired EntityManager em;
+    @Autowired EntityManagerFactory entityManagerFactory;
+    @Autowired SqlStatementCounter sqlStatementCounter;
+    @Autowired OrderSearchCache orderSearchCache;
+    @Autowired OrderService orderService;
+    @Autowired OrderRepository orderRepository;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+
+    private MockMvc mockMvc;
+    private QueryCounter queryCounter;
+    private long orderCount;
+    private Member member;
+    private Item book;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        queryCounter = new QueryCounter(entityManagerFactory, sqlStatementCounter);
+
+        long ordersBefore = orderRepository.count();
+
+        // 회원 3명 x 주문 3건 x 아이템 2개
+        Item[] books = new Item[ORDERS_PER_MEMBER + 1];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = createBook("조회 JPA" + i, 10000 + i, 100);
+        }
+        for (int m = 0; m < MEMBERS; m++) {
+            Member orderer = createMember("조회회원" + m);
+            for (int o = 0; o < ORDERS_PER_MEMBER; o++) {
+                Map<Long, Integer> itemCounts = new LinkedHashMap<>();
+                itemCounts.put(books[o].getId(), 1);
+                itemCounts.put(books[o + 1].getId(), 2);
+                orderService.orderCart(orderer.getId(), itemCounts);
+            }
+            member = orderer;
+        }
+        book = books[0];
+
+        em.flush();
+        orderCount = ordersBefore + MEMBERS * ORDERS_PER_MEMBER;
+        assertEquals("이 테스트가 만든 주문만 더해져야 한다", orderCount, orderRepository.count());
+    }
+
+    @Test
+    public void 주문_엔티티_조회() throws Exception {
+        count(get("/api/v1/orders")).assertStatementsAtMost(7).assertEntityLoadsAtMost(orderCount * ENTITIES_PER_ORDER);
+        count(get("/api/v2/orders")).assertStatementsAtMost(7).assertEntityLoadsAtMost(orderCount * ENTITIES_PER_ORDER);
+        count(get("/api/v2.1/orders")).assertStatementsAtMost(7).assertEntityLoadsAtMost(orderCount * ENTITIES_PER_ORDER);
+        count(get("/api/v3/orders")).assertStatementsAtMost(1).assertEntityLoadsAtMost(orderCount * ENTITIES_PER_ORDER);
+        count(get("/api/v3.1/orders")).assertStatementsAtMost(4).assertEntityLoadsAtMost(orderCount * ENTITIES_PER_ORDER);
+        count(get("/api/v3.2/orders")).assertStatementsAtMost(2).assertEntityLoadsAtMost(orderCount * ENTITIES_PER_ORDER);
+        count(get("/api/v3.1/orders").param("cursor", "")).assertStatementsAtMost(5);
+        count(get("/api/orders/export")).assertStatementsAtMost(4);
+    }
+
+    @Test
+    public void 주문_DTO_조회() throws Exception {
+        // v4 는 주문마다 아이템 쿼리가 나가는 1+N 예제
+        count(get("/api/v4/orders")).assertStatementsAtMost(1 + orderCount).assertEntityLoadsAtMost(0);
+        count(get("/api/v5/orders")).assertStatementsAtMost(2).assertEntityLoadsAtMost(0);
+        count(get("/api/v6/orders")).assertStatementsAtMost(2).assertEntityLoadsAtMost(0);
+        count(get("/api/v7/orders")).assertStatementsAtMost(2).assertEntityLoadsAtMost(0);
+        count(get("/api/v5/orders").param("cursor", "")).assertStatementsAtMost(2).assertEntityLoadsAtMost(0);
+        count(get("/api/v6/orders").param("cursor", "")).assertStatementsAtMost(2).assertEntityLoadsAtMost(0);
+        // 전략 선택기 : 어떤 전략이든 v3.1(batch fetch) 이하
+        count(get("/api/orders")).assertStatementsAtMost(4).assertEntityLoadsAtMost(orderCount * ENTITIES_PER_ORDER);
+    }
+
+    @Test
+    public void 주문_생성() throws Exception {
+        String cart = "{\"memberId\":" + member.getId() + ",\"lines\":[{\"itemId\":" + book.getId() + ",\"count\":1}]}";
+        count(post("/api/orders").contentType(MediaType.APPLICATION_JSON).content(cart))
+                .assertStatementsAtMost(7);
+
+        String bulk = "{\"orders\":[" +
+                "{\"memberId\":" + member.getId() + ",\"itemId\":" + book.getId() + ",\"count\":1}," +
+                "{\"memberId\":" + member.getId() + ",\"itemId\":" + book.getId() + ",\"count\":1}]}";
+        count(post("/api/orders/bulk").contentType(MediaType.APPLICATION_JSON).content(bulk))
+                .assertStatementsAtMost(8);
+    }
+
+    @Test
+    public void 대량_주문취소() throws Exception {
+        // 주문 수와 상관없이 검증 select, 주문 / summary 상태 batch, 상품별 수량 합계, 재고 batch
+        String orderIds = orderRepository.findAll().stream()
+                .map(order -> order.getId().toString())
+                .collect(Collectors.joining(","));
+        count(post("/api/orders/cancel").contentType(MediaType.APPLICATION_JSON).content("{\"orderIds\":[" + orderIds + "]}"))
+                .assertStatementsAtMost(5).assertEntityLoadsAtMost(0);
+    }
+
+    @Test
+    public void 간단주문_조회() throws Exception {
+        // v1 은 엔티티를 그대로 직렬화해서 orderItems 까지 읽는다
+        count(get("/api/v1/simple-orders")).assertStatementsAtMost(6).assertEntityLoadsAtMost(orderCount * 5);
+        count(get("/api/v2/simple-orders")).assertStatementsAtMost(4).assertEntityLoadsAtMost(orderCount * 3);
+        count(get("/api/v3/simple-orders")).assertStatementsAtMost(2).assertEntityLoadsAtMost(orderCount * 3);
+        count(get("/api/v4/simple-orders")).assertStatementsAtMost(1).assertEntityLoadsAtMost(0);
+        count(get("/api/v5/simple-orders")).assertStatementsAtMost(1).assertEntityLoadsAtMost(0);
+        count(get("/api/v6/simple-orders")).assertStatementsAtMost(1).assertEntityLoadsAtMost(0);
+    }
+
+    @Test
+    public void 회원_API() throws Exception {
+        count(get("/api/v1/members")).assertStatementsAtMost(1);
+        count(get("/api/v2/members")).assertStatementsAtMost(1);
+        count(post("/api/v1/members").contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"신규회원1\"}"))
+                .assertStatementsAtMost(2);
+        count(post("/api/v2/members").contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"신규회원2\"}"))
+                .assertStatementsAtMost(2);
+        count(put("/api/v2/members/" + member.getId()).contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"바뀐회원\"}"))
+                .assertStatementsAtMost(5);
+    }
+
+    // 영속성 컨텍스트 / 2차 캐시 / 주문 검색 캐시를 비워서 매번 DB 에서 읽는 경우를 잰다.
+    // 서비스 트랜잭션이 테스트 트랜잭션에 참여하므로 쓰기 SQL 은 flush 까지 포함해서 센다
+    private QueryCounter.Result count(MockHttpServletRequestBuilder request) throws Exception {
+        em.flush();
+        em.clear();
+        entityManagerFactory.getCache().evictAll();
+        orderSearchCache.clear();
+
+        return queryCounter.count(() -> {
+            mockMvc.perform(request).andExpect(status().isOk());
+            em.flush();
+            return null;
+        });
+    }
+
+    private Member createMember(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberRepository.save(member);
+        return member;
+    }
+
+    private Item createBook(String name, int price, int stockQuantity) {
+        Item book = new Book();
+        book.setName(name);
+        book.setPrice(price);
+        book.setStockQuantity(stockQuantity);
+        itemRepository.save(book);
+        return book;
+    }
+}
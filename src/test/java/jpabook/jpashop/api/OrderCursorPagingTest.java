@@ -0,0 +1,264 @@
+package jpabook.jpashop.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.service.query.OrderSearchCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * keyset 페이징 API 를 마지막 페이지까지 따라가면서 주문이 빠지거나 겹치지 않고, 아이템이 잘리지 않는지 본다.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class OrderCursorPagingTest {
+
+    // 페이지 크기보다 아이템이 많은 주문
+    private static final int LIMIT = 3;
+    private static final int BIG_ORDER_ITEMS = LIMIT * 2 + 1;
+
+    @Autowired WebApplicationContext context;
+    @Autowired ObjectMapper objectMapper;
+    @Autowired EntityManager em;
+    @Autowired OrderService orderService;
+    @Autowired OrderRepository orderRepository;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+    @Autowired OrderSearchCache orderSearchCache;
+
+    private MockMvc mockMvc;
+    private Long bigOrderId;
+    private Long emptyOrderId;
+    private Long canceledOrderId;
+    private Long otherOrderId;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+
+        Member member = createMember("커서회원");
+        Map<Long, Integer> bigCart = new LinkedHashMap<>();
+        for (int i = 0; i < BIG_ORDER_ITEMS; i++) {
+            bigCart.put(createBook("커서 JPA" + i).getId(), 1);
+        }
+        Long bookId = bigCart.keySet().iterator().next();
+        orderService.order(member.getId(), bookId, 1);
+        bigOrderId = orderService.orderCart(member.getId(), bigCart);
+        for (int i = 0; i < 2; i++) {
+            orderService.order(member.getId(), bookId, 1);
+        }
+        emptyOrderId = createEmptyOrder(member);
+        for (int i = 0; i < 2; i++) {
+            orderService.order(member.getId(), bookId, 1);
+        }
+        Member other = createMember("커서다른회원");
+        otherOrderId = orderService.order(other.getId(), bookId, 1);
+        canceledOrderId = orderService.order(other.getId(), bookId, 1);
+        orderService.cancelOrder(canceledOrderId);
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void 모든_페이지를_따라가면_주문이_한번씩_아이템은_전부() throws Exception {
+        for (String url : new String[]{"/api/v3.1/orders", "/api/v5/orders", "/api/v6/orders"}) {
+            //when
+            Map<Long, Integer> itemCounts = readAllPages(url);
+
+            //then
+            assertEquals(url + " 모든 주문이 한번씩 나와야 한다", orderRepository.count(), itemCounts.size());
+            assertEquals(url + " 페이지 크기보다 아이템이 많은 주문도 잘리지 않는다", BIG_ORDER_ITEMS, (int) itemCounts.get(bigOrderId));
+            assertEquals(url + " 아이템이 없는 주문도 빠지지 않는다", 0, (int) itemCounts.get(emptyOrderId));
+        }
+    }
+
+    @Test
+    public void 다음_페이지도_검색조건을_적용한다() throws Exception {
+        for (String url : new String[]{"/api/v3.1/orders", "/api/v5/orders", "/api/v6/orders"}) {
+            assertEquals(url + " 회원명", ids(otherOrderId, canceledOrderId),
+                    readAllPages(url, "memberName", "커서다른").keySet());
+            assertEquals(url + " 주문상태", ids(canceledOrderId),
+                    readAllPages(url, "orderStatus", "CANCEL").keySet());
+            assertEquals(url + " 회원명 + 주문상태", ids(otherOrderId),
+                    readAllPages(url, "memberName", "커서다른", "orderStatus", "ORDER").keySet());
+            assertEquals(url + " 첫 회원의 주문 수", 7, readAllPages(url, "memberName", "커서회원").size());
+        }
+    }
+
+    @Test
+    public void 전략_선택기도_검색조건을_적용한다() throws Exception {
+        // 전략마다 처음 한번씩은 측정하려고 고르므로 여러번 불러 모든 전략의 결과를 본다
+        for (int call = 0; call < 8; call++) {
+            assertEquals("회원명", ids(otherOrderId, canceledOrderId), readOffsetPage("memberName", "커서다른"));
+            assertEquals("주문상태", ids(canceledOrderId), readOffsetPage("memberName", "커서다른", "orderStatus", "CANCEL"));
+            assertEquals("첫 회원의 주문 수", 7, readOffsetPage("memberName", "커서회원").size());
+        }
+        // history 는 archive 를 읽으므로 archive 되지 않은 주문은 나오지 않는다
+        assertEquals(0, readOffsetPage("memberName", "커서회원", "history", "true").size());
+    }
+
+    @Test
+    public void history_검색은_hot_주문을_돌려주지_않는다() throws Exception {
+        // 커서 페이징은 archive 를 읽지 못하므로 hot 주문을 이력처럼 내주지 않고 거절한다
+        for (String url : new String[]{"/api/v3.1/orders", "/api/v5/orders", "/api/v6/orders"}) {
+            String body = mockMvc.perform(get(url).param("cursor", "").param("history", "true"))
+                    .andExpect(status().isBadRequest())
+                    .andReturn().getResponse().getContentAsString();
+            assertFalse(url + " " + body, body.contains("orderId"));
+        }
+        for (String url : new String[]{"/api/v3/orders", "/api/v3.1/orders", "/api/v3.2/orders", "/api/orders/export"}) {
+            mockMvc.perform(get(url).param("history", "true")).andExpect(status().isBadRequest());
+        }
+
+        // archive 를 읽는 v5 offset 조회에는 archive 되지 않은 주문이 나오지 않는다
+        String body = mockMvc.perform(get("/api/v5/orders").param("history", "true").param("memberName", "커서회원"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals(0, objectMapper.readTree(body).size());
+    }
+
+    @Test
+    public void hot_테이블만_읽는_조회는_history_검색을_거절한다() throws Exception {
+        int cacheSize = orderSearchCache.getSize();
+        String body = mockMvc.perform(get("/api/v4/simple-orders").param("history", "true"))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+        assertFalse(body, body.contains("orderId"));
+        // 거절된 요청은 hot 주문을 이력 키로 캐시에 남기지 않는다
+        assertEquals(cacheSize, orderSearchCache.getSize());
+
+        mockMvc.perform(get("/orders").param("history", "true")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/orders")).andExpect(status().isOk());
+    }
+
+    @Test
+    public void v3_2_offset_페이징도_아이템이_없는_주문을_빼지_않는다() throws Exception {
+        // id 를 먼저 페이징한 뒤 그 id 들만 컬렉션 fetch join 한다. inner join 이면 아이템 없는 주문이 페이지에서 빠진다
+        Map<Long, Integer> itemCounts = new LinkedHashMap<>();
+        for (int offset = 0; ; offset += LIMIT) {
+            String body = mockMvc.perform(get("/api/v3.2/orders").param("memberName", "커서회원")
+                            .param("offset", String.valueOf(offset)).param("limit", String.valueOf(LIMIT)))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            JsonNode page = objectMapper.readTree(body);
+            for (JsonNode order : page) {
+                itemCounts.put(order.get("orderId").asLong(), order.get("orderItems").size());
+            }
+            if (page.size() < LIMIT) {
+                break;
+            }
+        }
+
+        assertEquals(7, itemCounts.size());
+        assertEquals(0, (int) itemCounts.get(emptyOrderId));
+        assertEquals(BIG_ORDER_ITEMS, (int) itemCounts.get(bigOrderId));
+    }
+
+    @Test
+    public void 잘못된_커서는_400() throws Exception {
+        for (String url : new String[]{"/api/v3.1/orders", "/api/v5/orders", "/api/v6/orders"}) {
+            mockMvc.perform(get(url).param("cursor", "not-a-cursor")).andExpect(status().isBadRequest());
+        }
+    }
+
+    // 주문 id -> 아이템 수. 같은 주문이 두번 나오면 실패. params 는 이름, 값 순서로 모든 페이지 요청에 붙인다
+    private Map<Long, Integer> readAllPages(String url, String... params) throws Exception {
+        Map<Long, Integer> itemCounts = new LinkedHashMap<>();
+        String cursor = "";
+        while (cursor != null) {
+            MockHttpServletRequestBuilder request = get(url).param("cursor", cursor).param("limit", String.valueOf(LIMIT));
+            for (int i = 0; i < params.length; i += 2) {
+                request.param(params[i], params[i + 1]);
+            }
+            String body = mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            JsonNode page = objectMapper.readTree(body);
+            for (JsonNode order : page.get("data")) {
+                Integer previous = itemCounts.put(order.get("orderId").asLong(), order.get("orderItems").size());
+                assertNull(url + " 주문이 두 페이지에 나오면 안된다: " + order.get("orderId"), previous);
+            }
+            cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+        }
+        return itemCounts;
+    }
+
+    // /api/orders 한 페이지의 주문 id. params 는 이름, 값 순서
+    private Set<Long> readOffsetPage(String... params) throws Exception {
+        MockHttpServletRequestBuilder request = get("/api/orders");
+        for (int i = 0; i < params.length; i += 2) {
+            request.param(params[i], params[i + 1]);
+        }
+        String body = mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        Set<Long> orderIds = new HashSet<>();
+        for (JsonNode order : objectMapper.readTree(body)) {
+            orderIds.add(order.get("orderId").asLong());
+        }
+        return orderIds;
+    }
+
+    private Set<Long> ids(Long... orderIds) {
+        return new HashSet<>(Arrays.asList(orderIds));
+    }
+
+    // 아이템이 모두 삭제된 주문 같은 경우. 플랫 조인이 inner join 이면 이 주문이 페이지에서 사라진다
+    private Long createEmptyOrder(Member member) {
+        Delivery delivery = new Delivery();
+        delivery.setAddress(member.getAddress());
+        Order order = Order.createOrder(member, delivery);
+        em.persist(order);
+        return order.getId();
+    }
+
+    private Member createMember(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberRepository.save(member);
+        return member;
+    }
+
+    private Item createBook(String name) {
+        Item book = new Book();
+        book.setName(name);
+        book.setPrice(10000);
+        book.setStockQuantity(100);
+        itemRepository.save(book);
+        return book;
+    }
+}
@@ -0,0 +1,137 @@
+package jpabook.jpashop.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.service.OrderService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class OrderExportTest {
+
+    @Autowired WebApplicationContext context;
+    @Autowired ObjectMapper objectMapper;
+    @Autowired OrderService orderService;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+    @Autowired EntityManager em;
+
+    private MockMvc mockMvc;
+    private List<Long> kimOrderIds;
+    private List<Long> leeOrderIds;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+
+        Item book = createBook();
+        Member kim = createMember("내보내기김");
+        Member lee = createMember("내보내기이");
+        kimOrderIds = new ArrayList<>();
+        leeOrderIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            kimOrderIds.add(orderService.order(kim.getId(), book.getId(), 1));
+            leeOrderIds.add(orderService.order(lee.getId(), book.getId(), 1));
+        }
+        orderService.cancelOrder(kimOrderIds.get(0));
+        em.flush();
+    }
+
+    @Test
+    public void 한_줄에_주문_하나() throws Exception {
+        //when
+        List<JsonNode> orders = export(get("/api/orders/export"));
+
+        //then
+        Set<Long> exported = orderIds(orders);
+        assertEquals("주문이 두번 나오면 안된다", orders.size(), exported.size());
+        assertTrue("만든 주문이 모두 있어야 한다", exported.containsAll(kimOrderIds));
+        assertTrue(exported.containsAll(leeOrderIds));
+    }
+
+    @Test
+    public void 검색조건을_적용한다() throws Exception {
+        assertEquals(new HashSet<>(kimOrderIds),
+                orderIds(export(get("/api/orders/export").param("memberName", "내보내기김"))));
+        assertEquals(new HashSet<>(kimOrderIds.subList(1, 3)),
+                orderIds(export(get("/api/orders/export").param("memberName", "내보내기김").param("orderStatus", "ORDER"))));
+        assertEquals(new HashSet<>(Arrays.asList(kimOrderIds.get(0))),
+                orderIds(export(get("/api/orders/export").param("memberName", "내보내기").param("orderStatus", "CANCEL"))));
+        assertEquals(0, export(get("/api/orders/export").param("memberName", "없는회원")).size());
+    }
+
+    // 줄마다 JSON 객체 하나. writeValue 를 이어 쓰면 jackson 이 root value 사이에 공백을 넣으므로 줄 앞 공백도 본다
+    private List<JsonNode> export(MockHttpServletRequestBuilder request) throws Exception {
+        byte[] content = mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        String body = new String(content, StandardCharsets.UTF_8);
+
+        List<JsonNode> orders = new ArrayList<>();
+        if (body.isEmpty()) {
+            return orders;
+        }
+        assertTrue("마지막 줄도 줄바꿈으로 끝난다", body.endsWith("\n"));
+        for (String line : body.substring(0, body.length() - 1).split("\n", -1)) {
+            assertFalse("빈 줄 / 앞 공백이 없어야 한다 : [" + line + "]", line.isEmpty() || Character.isWhitespace(line.charAt(0)));
+            JsonNode order = objectMapper.readTree(line);
+            assertTrue(order.isObject());
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    private Set<Long> orderIds(List<JsonNode> orders) {
+        Set<Long> ids = new HashSet<>();
+        orders.forEach(order -> ids.add(order.get("orderId").asLong()));
+        return ids;
+    }
+
+    private Member createMember(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberRepository.save(member);
+        return member;
+    }
+
+    private Item createBook() {
+        Item book = new Book();
+        book.setName("내보내기 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(100);
+        itemRepository.save(book);
+        return book;
+    }
+}
@@ -0,0 +1,70 @@
+package jpabook.jpashop.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.OrderStatus;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class OrderJsonWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    public void 끝까지_쓰면_주문_배열() throws Exception {
+        //given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //when
+        try (JsonGenerator generator = OrderJsonWriter.createGenerator(objectMapper, out)) {
+            OrderJsonWriter writer = new OrderJsonWriter(generator, true);
+            writer.start();
+            writeOrder(writer);
+            writer.end();
+        }
+
+        //then
+        JsonNode orders = objectMapper.readTree(out.toByteArray());
+        assertEquals(1, orders.size());
+        assertEquals(1L, orders.get(0).get("orderId").asLong());
+        assertEquals("JPA1 BOOK", orders.get(0).get("orderItems").get(0).get("itemName").asText());
+    }
+
+    @Test
+    public void 도중에_실패하면_깨진_JSON() throws Exception {
+        //given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //when
+        try (JsonGenerator generator = OrderJsonWriter.createGenerator(objectMapper, out)) {
+            OrderJsonWriter writer = new OrderJsonWriter(generator, true);
+            writer.start();
+            writeOrder(writer);
+            writer.order(2L, "userB", LocalDateTime.now(), OrderStatus.ORDER, null);
+            throw new IllegalStateException("조회 도중 실패");
+        } catch (IllegalStateException expected) {
+        }
+
+        //then
+        try {
+            objectMapper.readTree(out.toByteArray());
+            fail("잘린 목록이 정상 JSON 으로 닫히면 안된다");
+        } catch (JsonProcessingException expected) {
+        }
+    }
+
+    private void writeOrder(OrderJsonWriter writer) {
+        writer.order(1L, "userA", LocalDateTime.now(), OrderStatus.ORDER, new Address("서울", "강가", "123-123"));
+        writer.orderItem("JPA1 BOOK", 10000, 1);
+        writer.endOrder();
+    }
+}
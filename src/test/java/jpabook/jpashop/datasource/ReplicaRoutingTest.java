@@ -0,0 +1,160 @@
+package jpabook.jpashop.datasource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.query.OrderSearchCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.servlet.http.Cookie;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 로컬 H2 두개(mem)로 primary / replica 라우팅 확인.
+ * 복제는 없으므로 primary 에 쓴 데이터가 replica 에서 안 보이면 replica 로 읽은 것이다.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaRoutingTest.PRIMARY_URL,
+        "jpashop.datasource.replica.url=" + ReplicaRoutingTest.REPLICA_URL,
+        "jpashop.datasource.replica.username=sa",
+        "jpashop.datasource.replica.read-your-writes-ms=60000",
+        "decorator.datasource.exclude-beans=dataSource"})
+public class ReplicaRoutingTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired WebApplicationContext context;
+    @Autowired MemberService memberService;
+    @Autowired MeterRegistry meterRegistry;
+    @Autowired ReadYourWritesFilter readYourWritesFilter;
+    @Autowired OrderSearchCache orderSearchCache;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private MockMvc mockMvc;
+
+    // 스키마는 primary 에만 만들어지므로 readOnly 조회가 시작되기(ApplicationReadyEvent) 전에 replica 로 옮긴다
+    @TestConfiguration
+    static class ReplicaSchema {
+
+        @EventListener(ContextRefreshedEvent.class)
+        public void copySchema() {
+            JdbcTemplate primary = new JdbcTemplate(new DriverManagerDataSource(PRIMARY_URL, "sa", ""));
+            JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+            List<String> ddl = primary.queryForList("script nodata", String.class);
+            ddl.forEach(replica::execute);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).addFilters(readYourWritesFilter).build();
+    }
+
+    @Test
+    public void 읽기전용_트랜잭션은_replica() {
+        //given
+        double replicaReads = routeCount("replica", "read-only");
+        Member member = new Member();
+        member.setName("routing-a");
+
+        //when
+        memberService.join(member);
+        List<Member> members = memberService.findMembers();
+
+        //then
+        assertFalse("replica 에는 복제되지 않았으므로 보이지 않아야 한다",
+                members.stream().anyMatch(m -> "routing-a".equals(m.getName())));
+        assertTrue(routeCount("replica", "read-only") > replicaReads);
+    }
+
+    @Test
+    public void 쓰기후_같은_세션은_primary_에서_읽는다() throws Exception {
+        //given
+        Cookie pin = mockMvc.perform(post("/api/v2/members").contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"routing-b\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getCookie(ReadYourWritesFilter.COOKIE_NAME);
+        assertNotNull("쓰기가 커밋되면 primary 고정 쿠키를 내려준다", pin);
+        double pinnedReads = routeCount("primary", "read-only-pinned");
+
+        //when
+        String pinned = mockMvc.perform(get("/api/v2/members").cookie(pin))
+                .andReturn().getResponse().getContentAsString();
+        String other = mockMvc.perform(get("/api/v2/members"))
+                .andReturn().getResponse().getContentAsString();
+
+        //then
+        assertTrue("쿠키가 있으면 방금 쓴 값을 읽는다", pinned.contains("routing-b"));
+        assertFalse("쿠키가 없으면 replica 에서 읽는다", other.contains("routing-b"));
+        assertTrue(routeCount("primary", "read-only-pinned") > pinnedReads);
+    }
+
+    @Test
+    public void 캐시를_채우는_조회는_primary_에서_읽는다() {
+        //given
+        Member member = new Member();
+        member.setName("routing-c");
+        memberService.join(member);
+        orderSearchCache.clear();
+
+        //when
+        List<Member> members = orderSearchCache.get("routing", new OrderSearch(), 0, 0, memberService::findMembers);
+
+        //then
+        assertTrue("복제가 늦은 replica 의 결과가 캐시에 들어가면 안된다",
+                members.stream().anyMatch(m -> "routing-c".equals(m.getName())));
+        assertEquals(1, orderSearchCache.getSize());
+    }
+
+    @Test
+    public void 읽기전용_트랜잭션_안에서_읽은_결과는_캐시하지_않는다() {
+        //given
+        orderSearchCache.clear();
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        Supplier<List<Member>> loader = memberService::findMembers;
+
+        //when
+        readOnly.execute(status -> {
+            memberService.findMembers();
+            return orderSearchCache.get("routing", new OrderSearch(), 0, 0, loader);
+        });
+
+        //then
+        assertEquals("이미 replica 커넥션을 얻은 트랜잭션일 수 있다", 0, orderSearchCache.getSize());
+    }
+
+    private double routeCount(String target, String transaction) {
+        return meterRegistry.get("jpashop.datasource.route")
+                .tag("target", target)
+                .tag("transaction", transaction)
+                .counter().count();
+    }
+}
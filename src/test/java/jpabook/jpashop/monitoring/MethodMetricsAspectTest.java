@@ -0,0 +1,90 @@
+package jpabook.jpashop.monitoring;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.service.OrderService;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// 서비스 트랜잭션이 커밋될 때의 flush 까지 세야 하므로 @Transactional 을 붙이지 않는다
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class MethodMetricsAspectTest {
+
+    @Autowired OrderService orderService;
+    @Autowired OrderRepository orderRepository;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+    @Autowired MeterRegistry meterRegistry;
+    @Autowired SqlStatementCounter sqlStatementCounter;
+
+    private Long orderId;
+    private Long memberId;
+    private Long itemId;
+
+    @After
+    public void tearDown() {
+        if (orderId != null) {
+            orderRepository.deleteById(orderId);
+        }
+        itemRepository.deleteById(itemId);
+        memberRepository.deleteById(memberId);
+    }
+
+    @Test
+    public void 서비스_호출의_지연시간과_커밋때_SQL_까지_기록() throws Exception {
+        //given
+        memberId = createMember();
+        itemId = createBook();
+        long callsBefore = timer() == null ? 0 : timer().count();
+        double statementsBefore = statements() == null ? 0 : statements().totalAmount();
+
+        //when
+        long sqlBefore = sqlStatementCounter.current();
+        orderId = orderService.order(memberId, itemId, 1);
+        long executed = sqlStatementCounter.current() - sqlBefore;
+
+        //then
+        assertEquals("호출마다 지연시간이 기록된다", callsBefore + 1, timer().count());
+        assertTrue(executed > 0);
+        assertEquals("트랜잭션 바깥에서 재므로 커밋 직전 flush 의 insert 까지 센다",
+                executed, (long) (statements().totalAmount() - statementsBefore));
+    }
+
+    private Timer timer() {
+        return meterRegistry.find("jpashop.method").tags("class", "OrderService", "method", "order", "exception", "none").timer();
+    }
+
+    private DistributionSummary statements() {
+        return meterRegistry.find("jpashop.method.statements").tags("class", "OrderService", "method", "order").summary();
+    }
+
+    private Long createMember() {
+        Member member = new Member();
+        member.setName("지표회원");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        return memberRepository.save(member).getId();
+    }
+
+    private Long createBook() {
+        Book book = new Book();
+        book.setName("지표 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(10);
+        return itemRepository.save(book).getId();
+    }
+}
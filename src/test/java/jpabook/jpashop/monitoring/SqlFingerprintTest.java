@@ -0,0 +1,60 @@
+package jpabook.jpashop.monitoring;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class SqlFingerprintTest {
+
+    @Test
+    public void 문자열_리터럴은_같은_fingerprint() throws Exception {
+        assertEquals(SqlFingerprint.of("select * from member where name = 'kim'"),
+                SqlFingerprint.of("select * from member where name = 'it''s lee'"));
+        assertEquals("select * from member where name = ?",
+                SqlFingerprint.of("select * from member where name = 'kim'"));
+    }
+
+    @Test
+    public void 숫자_리터럴은_같은_fingerprint() throws Exception {
+        assertEquals(SqlFingerprint.of("select * from orders where order_id = 1"),
+                SqlFingerprint.of("select * from orders where order_id = 12345"));
+        assertEquals(SqlFingerprint.of("select * from item where price > 10.5"),
+                SqlFingerprint.of("select * from item where price > ?"));
+    }
+
+    @Test
+    public void in_목록은_길이와_무관하게_같은_fingerprint() throws Exception {
+        String expected = "select * from order_item where order_id in (?)";
+        assertEquals(expected, SqlFingerprint.of("select * from order_item where order_id in (?, ?)"));
+        assertEquals(expected, SqlFingerprint.of("select * from order_item where order_id in (?,?,?)"));
+        assertEquals(expected, SqlFingerprint.of("select * from order_item where order_id in (1, 2, 3)"));
+        assertEquals(expected, SqlFingerprint.of("select * from order_item where order_id in ('a', 'b')"));
+    }
+
+    @Test
+    public void 공백과_대소문자는_무시() throws Exception {
+        assertEquals(SqlFingerprint.of("select * from orders where order_id = ?"),
+                SqlFingerprint.of("SELECT *\n  FROM orders\twhere order_id = ?  "));
+    }
+
+    @Test
+    public void 다른_문장은_겹치지_않는다() throws Exception {
+        assertNotEquals(SqlFingerprint.of("select * from orders where order_id = ?"),
+                SqlFingerprint.of("select * from member where member_id = ?"));
+        assertNotEquals(SqlFingerprint.of("select * from orders where order_id = ?"),
+                SqlFingerprint.of("select * from orders where member_id = ?"));
+        assertNotEquals("이름에 붙은 숫자는 리터럴이 아니다",
+                SqlFingerprint.of("select orderitem0_.order_id from order_item orderitem0_"),
+                SqlFingerprint.of("select orderitem1_.order_id from order_item orderitem1_"));
+        assertNotEquals(SqlFingerprint.of("select * from t1 where a = ?"),
+                SqlFingerprint.of("select * from t2 where a = ?"));
+        assertNotEquals(SqlFingerprint.of("select * from orders where order_id in (?)"),
+                SqlFingerprint.of("select * from orders where order_id = ?"));
+    }
+
+    @Test
+    public void null_은_빈_문자열() throws Exception {
+        assertEquals("", SqlFingerprint.of(null));
+    }
+}
@@ -0,0 +1,171 @@
+package jpabook.jpashop.monitoring;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.RepeatedQueryException;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.service.OrderService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * v4 주문 조회(주문마다 아이템 쿼리가 나가는 1+N)로 limit 을 바꿔 가며 같은 SQL 반복 횟수를 맞춘다.
+ * 개발 환경 설정(fail-request=true)으로 띄우고, threshold 는 작게 둔다.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "jpashop.sql-repetition.threshold=" + SqlRepetitionDetectorTest.THRESHOLD,
+        "jpashop.sql-repetition.fail-request=true"})
+@Transactional
+public class SqlRepetitionDetectorTest {
+
+    static final int THRESHOLD = 3;
+
+    @Autowired WebApplicationContext context;
+    @Autowired SqlRepetitionDetector sqlRepetitionDetector;
+    @Autowired MeterRegistry meterRegistry;
+    @Autowired OrderService orderService;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+    @Autowired EntityManager em;
+
+    private MockMvc mockMvc;
+    private final ListAppender<ILoggingEvent> warnings = new ListAppender<>();
+
+    @Before
+    public void setUp() {
+        // webAppContextSetup 은 서블릿 필터를 붙이지 않으므로 직접 넣는다
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).addFilters(sqlRepetitionDetector).build();
+        warnings.start();
+        detectorLogger().addAppender(warnings);
+
+        Member member = createMember();
+        Item book = createBook();
+        for (int i = 0; i < THRESHOLD + 1; i++) {
+            orderService.order(member.getId(), book.getId(), 1);
+        }
+        em.flush();
+    }
+
+    @After
+    public void tearDown() {
+        detectorLogger().detachAppender(warnings);
+    }
+
+    @Test
+    public void threshold_이하면_경고도_카운터도_없다() throws Exception {
+        //given
+        double before = repetitions();
+
+        //when
+        mockMvc.perform(get("/api/v4/orders").param("limit", String.valueOf(THRESHOLD))).andExpect(status().isOk());
+
+        //then
+        assertEquals(before, repetitions(), 0);
+        assertEquals(0, warnings().size());
+    }
+
+    @Test
+    public void 횟수는_요청마다_새로_센다() throws Exception {
+        //given
+        double before = repetitions();
+
+        //when
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(get("/api/v4/orders").param("limit", String.valueOf(THRESHOLD))).andExpect(status().isOk());
+        }
+
+        //then
+        assertEquals("요청마다 threshold 번이면 합이 넘어도 N+1 이 아니다", before, repetitions(), 0);
+        assertEquals(0, warnings().size());
+    }
+
+    @Test
+    public void threshold_를_넘으면_경고_카운터_요청실패() throws Exception {
+        //given
+        double before = repetitions();
+
+        //when
+        try {
+            mockMvc.perform(get("/api/v4/orders").param("limit", String.valueOf(THRESHOLD + 1)));
+            fail("RepeatedQueryException 으로 요청이 실패해야 한다");
+        } catch (Exception e) {
+            //then
+            // p6spy 리스너(onAfterAnyExecute)에서 던진 예외가 hibernate / 트랜잭션을 지나 요청까지 올라온다
+            assertTrue("원인 : " + e, hasCause(e, RepeatedQueryException.class));
+        }
+        assertEquals(before + 1, repetitions(), 0);
+        List<String> warnings = warnings();
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).startsWith("N+1 의심 : GET /api/v4/orders 에서 같은 SQL " + (THRESHOLD + 1) + "회 실행"));
+    }
+
+    private boolean hasCause(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<String> warnings() {
+        return warnings.list.stream()
+                .filter(event -> event.getLevel() == Level.WARN)
+                .map(ILoggingEvent::getFormattedMessage)
+                .collect(Collectors.toList());
+    }
+
+    private Logger detectorLogger() {
+        return (Logger) LoggerFactory.getLogger(SqlRepetitionDetector.class);
+    }
+
+    private double repetitions() {
+        return meterRegistry.counter("jpashop.sql.repetition").count();
+    }
+
+    private Member createMember() {
+        Member member = new Member();
+        member.setName("반복회원");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberRepository.save(member);
+        return member;
+    }
+
+    private Item createBook() {
+        Item book = new Book();
+        book.setName("반복 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(100);
+        itemRepository.save(book);
+        return book;
+    }
+}
@@ -0,0 +1,62 @@
+package jpabook.jpashop.repository;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InListLoaderTest {
+
+    @Test
+    public void 패딩_크기는_2의_거듭제곱() throws Exception {
+        assertEquals(1, InListLoader.paddedSize(0));
+        assertEquals(1, InListLoader.paddedSize(1));
+        assertEquals(2, InListLoader.paddedSize(2));
+        assertEquals(4, InListLoader.paddedSize(3));
+        assertEquals(4, InListLoader.paddedSize(4));
+        assertEquals(512, InListLoader.paddedSize(257));
+        assertEquals(512, InListLoader.paddedSize(InListLoader.MAX_CHUNK_SIZE));
+    }
+
+    @Test
+    public void 빈_목록은_청크_없음() throws Exception {
+        assertTrue(InListLoader.chunks(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void 중복을_빼고_마지막_id_로_채운다() throws Exception {
+        //when
+        List<List<Long>> chunks = InListLoader.chunks(Arrays.asList(3L, 1L, 3L, 2L, 1L, 5L, 4L));
+
+        //then
+        assertEquals(1, chunks.size());
+        assertEquals(Arrays.asList(3L, 1L, 2L, 5L, 4L, 4L, 4L, 4L), chunks.get(0));
+    }
+
+    @Test
+    public void 최대_크기로_자르고_모든_id_를_한번씩() throws Exception {
+        //given
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            ids.add(id);
+        }
+
+        //when
+        List<List<Long>> chunks = InListLoader.chunks(ids);
+
+        //then
+        assertEquals(2, chunks.size());
+        assertEquals(InListLoader.MAX_CHUNK_SIZE, chunks.get(0).size());
+        assertEquals("488 개는 512 로 채운다", 512, chunks.get(1).size());
+        Set<Long> loaded = new LinkedHashSet<>();
+        chunks.forEach(loaded::addAll);
+        assertEquals(ids, new ArrayList<>(loaded));
+    }
+}
@@ -0,0 +1,156 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.MemberNameGram;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.OrderService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class MemberNameGramIndexerTest {
+
+    @Autowired OrderService orderService;
+    @Autowired MemberService memberService;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+    @Autowired OrderRepository orderRepository;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired EntityManager em;
+
+    @Test
+    public void 부분일치_검색() throws Exception {
+        //given
+        Item book = createBook();
+        Long kim = order(createMember("김색인한"), book);
+        Long park = order(createMember("박색인한"), book);
+        Long lee = order(createMember("이색인희"), book);
+        em.flush();
+
+        //then
+        assertEquals("gram(인한) 이 있는 회원의 주문만", ids(kim, park), search("색인한"));
+        assertEquals("가운데 부분도 찾는다", ids(kim, park, lee), search("색인"));
+        assertEquals(ids(lee), search("이색인희"));
+        assertEquals("없는 이름", ids(), search("색인없음"));
+    }
+
+    @Test
+    public void GRAM_SIZE_보다_짧은_검색어() throws Exception {
+        //given
+        Item book = createBook();
+        Long kim = order(createMember("김짧은"), book);
+        Long park = order(createMember("박짧다"), book);
+        em.flush();
+
+        //then
+        assertEquals("한 글자는 색인 없이 contains 로 찾는다", ids(kim, park), search("짧"));
+        assertEquals(ids(kim), search("은"));
+    }
+
+    @Test
+    public void 반복되는_gram() throws Exception {
+        //given
+        Item book = createBook();
+        Long laugh = order(createMember("하하하호"), book);
+        Long other = order(createMember("하하호호"), book);
+        em.flush();
+
+        //then
+        assertEquals("하하하 의 gram 은 {하하} 하나", ids(laugh), search("하하하"));
+        assertEquals(ids(laugh, other), search("하하"));
+        assertEquals(ids(other), search("호호"));
+    }
+
+    @Test
+    public void 이름을_바꾸면_새_이름으로만_찾는다() throws Exception {
+        //given
+        Item book = createBook();
+        Member member = createMember("옛이름회원");
+        Long orderId = order(member, book);
+        em.flush();
+
+        //when
+        memberService.update(member.getId(), "새이름회원");
+        em.flush();
+
+        //then
+        assertEquals("새 이름으로 찾는다", ids(orderId), search("새이름"));
+        assertEquals("옛 이름으로는 찾지 않는다", ids(), search("옛이름"));
+        assertEquals("gram 은 새 이름 것만 남는다", gramCount("새이름회원"), gramRows(member.getId()));
+    }
+
+    @Test
+    public void 회원을_지우면_gram_도_지운다() throws Exception {
+        //given
+        Member member = createMember("탈퇴할회원");
+        em.flush();
+        assertEquals(gramCount("탈퇴할회원"), gramRows(member.getId()));
+
+        //when
+        memberRepository.delete(member);
+        em.flush();
+
+        //then
+        assertEquals("남은 gram 이 없어야 한다", 0, gramRows(member.getId()));
+    }
+
+    private Set<Long> search(String memberName) {
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberName(memberName);
+        return orderRepository.findAllByQuerydsl(orderSearch).stream()
+                .map(Order::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private Set<Long> ids(Long... orderIds) {
+        return new HashSet<>(Arrays.asList(orderIds));
+    }
+
+    private int gramRows(Long memberId) {
+        return jdbcTemplate.queryForObject("select count(*) from member_name_gram where member_id = ?", Integer.class, memberId);
+    }
+
+    private int gramCount(String name) {
+        return MemberNameGram.gramsOf(name).size();
+    }
+
+    private Long order(Member member, Item book) {
+        return orderService.order(member.getId(), book.getId(), 1);
+    }
+
+    private Member createMember(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberRepository.save(member);
+        return member;
+    }
+
+    private Item createBook() {
+        Item book = new Book();
+        book.setName("색인 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(100);
+        itemRepository.save(book);
+        return book;
+    }
+}
@@ -0,0 +1,129 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.monitoring.SqlStatementCounter;
+import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.OrderService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class OrderSummaryProjectorTest {
+
+    @Autowired OrderService orderService;
+    @Autowired MemberService memberService;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+    @Autowired SqlStatementCounter sqlStatementCounter;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired EntityManager em;
+
+    @Test
+    public void 주문_취소_회원명변경을_따라간다() throws Exception {
+        //given
+        Member member = createMember("요약회원");
+        Item book = createBook(100);
+
+        //when
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            orderIds.add(orderService.order(member.getId(), book.getId(), 1));
+        }
+        em.flush();
+        orderService.cancelOrder(orderIds.get(0));
+        em.flush();
+        memberService.update(member.getId(), "바뀐요약회원");
+        em.flush();
+
+        //then
+        assertEquals("주문마다 한 row", 3, summaryCount(member));
+        assertEquals("CANCEL", summary(orderIds.get(0)).get("status"));
+        assertEquals("ORDER", summary(orderIds.get(1)).get("status"));
+        assertEquals("서울", summary(orderIds.get(1)).get("city"));
+        for (Long orderId : orderIds) {
+            assertEquals("회원명 변경은 그 회원의 summary 전체에 반영된다", "바뀐요약회원", summary(orderId).get("member_name"));
+        }
+    }
+
+    @Test
+    public void 같은_flush_안에서_주문후_취소() throws Exception {
+        //given
+        Member member = createMember("요약회원");
+        Item book = createBook(100);
+
+        //when
+        Long orderId = orderService.order(member.getId(), book.getId(), 1);
+        orderService.cancelOrder(orderId);
+        em.flush();
+
+        //then
+        assertEquals("insert 뒤에 status update 가 나가야 한다", "CANCEL", summary(orderId).get("status"));
+    }
+
+    @Test
+    public void summary_insert_는_주문수와_무관하게_batch_한번() throws Exception {
+        //given
+        Member member = createMember("요약회원");
+        Item book = createBook(1000);
+
+        //when
+        long one = flushStatements(member, book, 1);
+        long many = flushStatements(member, book, 50);
+
+        //then
+        assertEquals("주문 1건이든 50건이든 flush 의 SQL 수는 같아야 한다", one, many);
+        assertEquals(51, summaryCount(member));
+    }
+
+    private long flushStatements(Member member, Item book, int orders) {
+        em.flush();
+        for (int i = 0; i < orders; i++) {
+            orderService.order(member.getId(), book.getId(), 1);
+        }
+        long before = sqlStatementCounter.current();
+        em.flush();
+        return sqlStatementCounter.current() - before;
+    }
+
+    private int summaryCount(Member member) {
+        return jdbcTemplate.queryForObject("select count(*) from order_summary where member_id = ?", Integer.class, member.getId());
+    }
+
+    private Map<String, Object> summary(Long orderId) {
+        return jdbcTemplate.queryForMap("select member_name, status, city from order_summary where order_id = ?", orderId);
+    }
+
+    private Member createMember(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberRepository.save(member);
+        return member;
+    }
+
+    private Item createBook(int stockQuantity) {
+        Item book = new Book();
+        book.setName("요약 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        itemRepository.save(book);
+        return book;
+    }
+}
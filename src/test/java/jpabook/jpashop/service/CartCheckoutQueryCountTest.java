@@ -0,0 +1,188 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.exception.NoSuchEntityException;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.monitoring.SqlStatementCounter;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 장바구니 주문의 SQL 수는 상품 줄 수와 무관하고, 재고가 모자라거나 없는 상품이 하나라도 있으면 전체가 롤백된다.
+ *
+ * 롤백은 서비스 트랜잭션이 직접 커밋 / 롤백해야 확인되므로 @Transactional 을 붙이지 않는다.
+ * 시퀀스 위치가 다른 테스트에 따라 달라지지 않도록 DB 를 따로 쓴다.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:cart-checkout;DB_CLOSE_DELAY=-1")
+public class CartCheckoutQueryCountTest {
+
+    private static final int CART_LINES = 20;
+
+    @Autowired OrderService orderService;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+    @Autowired OrderRepository orderRepository;
+    @Autowired SqlStatementCounter sqlStatementCounter;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired WebApplicationContext context;
+
+    private MockMvc mockMvc;
+    private Member member;
+    private List<Long> itemIds;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        member = createMember();
+        itemIds = new ArrayList<>();
+        for (int i = 0; i < CART_LINES; i++) {
+            itemIds.add(createBook("장바구니 JPA" + i, 10));
+        }
+        // 주문 / 배송 / 주문상품 시퀀스 block 을 미리 받아 둔다 (pooled-lo, allocationSize 1000)
+        orderService.orderCart(member.getId(), cart(1, 1));
+    }
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.queryForList("select order_id from orders where member_id = ?", Long.class, member.getId())
+                .forEach(orderRepository::deleteById);
+        itemIds.forEach(itemRepository::deleteById);
+        memberRepository.deleteById(member.getId());
+    }
+
+    @Test
+    public void 장바구니_SQL_수는_상품_줄_수와_무관() throws Exception {
+        //when
+        long one = statements(cart(1, 1));
+        long twenty = statements(cart(CART_LINES, 1));
+
+        //then
+        assertEquals("1줄이든 20줄이든 회원 조회, 재고 차감 batch, 상품 조회, insert batch 로 같아야 한다", one, twenty);
+    }
+
+    @Test
+    public void 재고가_모자란_상품이_있으면_전체_롤백() throws Exception {
+        //given
+        Map<Long, Integer> cart = cart(CART_LINES, 2);
+        cart.put(itemIds.get(CART_LINES - 1), 100);
+        Map<Long, Integer> stocksBefore = stocks();
+        int ordersBefore = orderCount();
+
+        //when
+        try {
+            orderService.orderCart(member.getId(), cart);
+            fail("재고 부족 예외가 발생해야 한다");
+        } catch (NotEnoughStockException expected) {
+        }
+
+        //then
+        assertEquals("batch 에서 먼저 차감된 상품도 되돌아가야 한다", stocksBefore, stocks());
+        assertEquals("주문은 저장되지 않는다", ordersBefore, orderCount());
+    }
+
+    @Test
+    public void 없는_회원이면_400() throws Exception {
+        int ordersBefore = orderCount();
+
+        mockMvc.perform(post("/api/orders").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"memberId\":" + Long.MAX_VALUE + ",\"lines\":[{\"itemId\":" + itemIds.get(0) + ",\"count\":1}]}"))
+                .andExpect(status().isBadRequest());
+
+        try {
+            orderService.orderCart(Long.MAX_VALUE, cart(1, 1));
+            fail("없는 회원 예외가 발생해야 한다");
+        } catch (NoSuchEntityException expected) {
+        }
+        assertEquals(ordersBefore, orderCount());
+    }
+
+    @Test
+    public void 없는_상품이_있으면_재고_부족이_아니라_400_이고_전체_롤백() throws Exception {
+        //given
+        Map<Long, Integer> cart = cart(CART_LINES, 1);
+        cart.put(Long.MAX_VALUE, 1);
+        Map<Long, Integer> stocksBefore = stocks();
+
+        //when
+        try {
+            orderService.orderCart(member.getId(), cart);
+            fail("없는 상품 예외가 발생해야 한다");
+        } catch (NoSuchEntityException expected) {
+            //then
+            assertTrue(expected.getMessage(), expected.getMessage().contains(String.valueOf(Long.MAX_VALUE)));
+        }
+        assertEquals("batch 에서 먼저 차감된 상품도 되돌아가야 한다", stocksBefore, stocks());
+
+        mockMvc.perform(post("/api/orders").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"memberId\":" + member.getId() + ",\"lines\":[{\"itemId\":" + Long.MAX_VALUE + ",\"count\":1}]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private long statements(Map<Long, Integer> cart) {
+        long before = sqlStatementCounter.current();
+        orderService.orderCart(member.getId(), cart);
+        return sqlStatementCounter.current() - before;
+    }
+
+    private Map<Long, Integer> cart(int lines, int count) {
+        Map<Long, Integer> cart = new LinkedHashMap<>();
+        for (Long itemId : itemIds.subList(0, lines)) {
+            cart.put(itemId, count);
+        }
+        return cart;
+    }
+
+    private Map<Long, Integer> stocks() {
+        Map<Long, Integer> stocks = new LinkedHashMap<>();
+        for (Long itemId : itemIds) {
+            stocks.put(itemId, jdbcTemplate.queryForObject("select stock_quantity from item where item_id = ?", Integer.class, itemId));
+        }
+        return stocks;
+    }
+
+    private int orderCount() {
+        return jdbcTemplate.queryForObject("select count(*) from orders where member_id = ?", Integer.class, member.getId());
+    }
+
+    private Member createMember() {
+        Member member = new Member();
+        member.setName("장바구니회원");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        return memberRepository.save(member);
+    }
+
+    private Long createBook(String name, int stockQuantity) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        return itemRepository.save(book).getId();
+    }
+}
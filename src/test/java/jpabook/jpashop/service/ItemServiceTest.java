@@ -0,0 +1,150 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.controller.BookForm;
+import jpabook.jpashop.controller.ItemController;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.domain.item.StockPolicy;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.ItemStockShardRepository;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.ui.ExtendedModelMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+// 정책 변경은 커밋된 뒤에 StockService 메모리에 반영되므로 @Transactional 을 붙이지 않는다
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ItemServiceTest {
+
+    @Autowired ItemService itemService;
+    @Autowired ItemController itemController;
+    @Autowired StockService stockService;
+    @Autowired ItemRepository itemRepository;
+    @Autowired ItemStockShardRepository itemStockShardRepository;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private final List<Long> itemIds = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (Long itemId : itemIds) {
+            transactionTemplate.execute(status -> itemStockShardRepository.deleteByItemId(itemId));
+            itemRepository.deleteById(itemId);
+        }
+    }
+
+    @Test
+    public void 샤드상품_수정폼_그대로_저장하면_재고유지() throws Exception {
+        //given
+        Long itemId = createBook("시골 JPA", 10000, 100);
+        itemService.changeStockPolicy(itemId, StockPolicy.SHARDED);
+        stockService.reserve(itemId, 7);
+        ExtendedModelMap model = new ExtendedModelMap();
+        itemController.updateItemForm(itemId, model);
+        BookForm form = (BookForm) model.get("form");
+
+        //when
+        form.setName("도시 JPA");
+        itemController.update(itemId, form);
+
+        //then
+        Item book = itemRepository.findById(itemId).get();
+        assertEquals("폼은 판매 가능 재고로 채워진다", 93, form.getStockQuantity());
+        assertEquals("재고를 안 바꾸면 샤드 재고가 그대로여야 한다", 93, itemService.availableStock(itemId));
+        assertEquals("샤드 상품의 item.stock_quantity 는 0", 0, book.getStockQuantity());
+        assertEquals("도시 JPA", book.getName());
+        assertEquals(93, (int) itemService.availableStocks(Collections.singletonList(book)).get(itemId));
+    }
+
+    @Test
+    public void 샤드상품_재고수정() throws Exception {
+        //given
+        Long itemId = createBook("시골 JPA", 10000, 100);
+        itemService.changeStockPolicy(itemId, StockPolicy.SHARDED);
+
+        //when
+        itemService.updateItem(itemId, "시골 JPA", 10000, 50);
+
+        //then
+        assertEquals("바꾼 재고로 샤드를 다시 나눈다", 50, itemService.availableStock(itemId));
+        assertEquals(0, itemRepository.findById(itemId).get().getStockQuantity());
+    }
+
+    @Test
+    public void 일반상품_재고수정() throws Exception {
+        //given
+        Long itemId = createBook("시골 JPA", 10000, 100);
+
+        //when
+        itemService.updateItem(itemId, "시골 JPA", 10000, 30);
+
+        //then
+        assertEquals(30, itemRepository.findById(itemId).get().getStockQuantity());
+        assertEquals(30, itemService.availableStock(itemId));
+    }
+
+    @Test
+    public void 정책변경이_롤백되면_메모리_정책도_그대로() throws Exception {
+        //given
+        Long itemId = createBook("시골 JPA", 10000, 100);
+
+        //when
+        new TransactionTemplate(transactionManager).execute(status -> {
+            stockService.changePolicy(itemId, StockPolicy.SHARDED);
+            assertEquals("커밋 전에는 메모리 정책을 바꾸지 않는다", StockPolicy.DIRECT, stockService.policyOf(itemId));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        //then
+        assertEquals(StockPolicy.DIRECT, stockService.policyOf(itemId));
+        assertEquals(StockPolicy.DIRECT, itemRepository.findStockPolicy(itemId).get());
+        stockService.reserve(itemId, 10);
+        assertEquals(90, stockQuantityOf(itemId));
+    }
+
+    @Test
+    public void 다른_인스턴스가_바꾼_정책은_차감실패시_row_기준으로_다시_보낸다() throws Exception {
+        //given : 이 인스턴스는 SHARDED 로 알고 있는데 다른 인스턴스가 DIRECT 로 되돌렸다
+        Long itemId = createBook("시골 JPA", 10000, 100);
+        itemService.changeStockPolicy(itemId, StockPolicy.SHARDED);
+        jdbcTemplate.update("delete from item_stock_shard where item_id = ?", itemId);
+        jdbcTemplate.update("update item set stock_policy = 'DIRECT', stock_quantity = 100 where item_id = ?", itemId);
+
+        //when
+        stockService.reserve(itemId, 7);
+
+        //then
+        assertEquals(93, stockQuantityOf(itemId));
+        assertEquals(StockPolicy.DIRECT, stockService.policyOf(itemId));
+    }
+
+    private int stockQuantityOf(Long itemId) {
+        return jdbcTemplate.queryForObject("select stock_quantity from item where item_id = ?", Integer.class, itemId);
+    }
+
+    private Long createBook(String name, int price, int stockQuantity) {
+        Item book = new Book();
+        book.setName(name);
+        book.setPrice(price);
+        book.setStockQuantity(stockQuantity);
+        itemRepository.save(book);
+        itemIds.add(book.getId());
+        return book.getId();
+    }
+}
@@ -50,4 +50,35 @@ public class MemberServiceTest {
         //then
         fail("예외가 발생햐야 한다");
     }
-}
\ No newline at end of file
+
+    @Test(expected = IllegalStateException.class)
+    public void 다른_회원_이름으로_변경_예외발생() throws Exception {
+        //given
+        Member member1 = new Member();
+        member1.setName("kim");
+        Member member2 = new Member();
+        member2.setName("lee");
+        memberService.join(member1);
+        memberService.join(member2);
+
+        //when
+        memberService.update(member2.getId(), "kim");
+
+        //then
+        fail("예외가 발생햐야 한다");
+    }
+
+    @Test
+    public void 같은_이름으로_변경은_그대로() throws Exception {
+        //given
+        Member member = new Member();
+        member.setName("kim");
+        memberService.join(member);
+
+        //when
+        memberService.update(member.getId(), "kim");
+
+        //then
+        assertThat(memberRepository.findById(member.getId()).orElse(null).getName()).isEqualTo("kim");
+    }
+}
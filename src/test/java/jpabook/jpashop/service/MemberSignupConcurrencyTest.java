@@ -0,0 +1,68 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.repository.MemberRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// 스레드마다 별도 트랜잭션으로 커밋되어야 하므로 @Transactional 을 붙이지 않는다
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class MemberSignupConcurrencyTest {
+
+    @Autowired MemberService memberService;
+    @Autowired MemberRepository memberRepository;
+    @Autowired MemberNameFilter memberNameFilter;
+
+    @Test
+    public void 동시가입_중복회원_없음() throws Exception {
+        //given
+        String name = "동시가입회원";
+        int threads = 16;
+        int attempts = 100;
+        assertFalse("처음 보는 이름은 필터에 없어야 한다", memberNameFilter.mightContain(name));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger success = new AtomicInteger();
+        AtomicInteger duplicated = new AtomicInteger();
+
+        //when
+        for (int i = 0; i < attempts; i++) {
+            executor.submit(() -> {
+                start.await();
+                Member member = new Member();
+                member.setName(name);
+                try {
+                    memberService.join(member);
+                    success.incrementAndGet();
+                } catch (IllegalStateException e) {
+                    duplicated.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        //then
+        assertEquals("한명만 가입되어야 한다", 1, success.get());
+        assertEquals("나머지는 중복 예외여야 한다", attempts - 1, duplicated.get());
+        assertEquals(1, memberRepository.findByName(name).size());
+        assertTrue("가입한 이름은 필터에 있어야 한다", memberNameFilter.mightContain(name));
+    }
+}
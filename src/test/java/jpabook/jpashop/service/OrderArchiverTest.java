@@ -0,0 +1,138 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import jpabook.jpashop.repository.order.query.OrderRowHandler;
+import jpabook.jpashop.service.query.OrderQueryService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// archive 는 청크마다 별도 트랜잭션으로 커밋하므로 @Transactional 을 붙이지 않는다.
+// 다른 테스트가 커밋한 취소 주문까지 옮기지 않도록 DB 를 따로 쓴다
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:order-archiver;DB_CLOSE_DELAY=-1")
+public class OrderArchiverTest {
+
+    @Autowired OrderArchiver orderArchiver;
+    @Autowired OrderService orderService;
+    @Autowired OrderRepository orderRepository;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired OrderQueryService orderQueryService;
+
+    @Test
+    public void 취소된_주문은_archive_로_옮겨진다() throws Exception {
+        //given
+        Member member = createMember("아카이브회원");
+        Item book = createBook("아카이브 JPA", 10000, 10);
+        Long canceled = orderService.order(member.getId(), book.getId(), 1);
+        Long active = orderService.order(member.getId(), book.getId(), 1);
+        orderService.cancelOrder(canceled);
+        long hotBefore = orderRepository.count();
+        assertEquals("옮길 취소 주문은 이 테스트가 만든 1건뿐", 1L,
+                (long) jdbcTemplate.queryForObject("select count(*) from orders where status = 'CANCEL'", Long.class));
+
+        //when
+        LocalDateTime now = LocalDateTime.now();
+        int moved = orderArchiver.archive(now.minusYears(10), now.plusMinutes(1), Integer.MAX_VALUE, 0);
+
+        //then
+        assertEquals("취소된 주문 1건만 옮긴다", 1, moved);
+        assertEquals(hotBefore - 1, orderRepository.count());
+        assertEquals(1L, (long) orderArchiver.tableSizes().get("orders_archive"));
+        assertFalse("취소된 주문은 hot 테이블에서 빠진다", orderRepository.existsById(canceled));
+        assertTrue("진행중인 주문은 남는다", orderRepository.existsById(active));
+        assertEquals("order_summary 는 hot 주문만 가진다", 0L,
+                (long) jdbcTemplate.queryForObject("select count(*) from order_summary where order_id = ?", Long.class, canceled));
+
+        List<OrderQueryDto> hot = orderRepository.findOrderQueryDtoOptimization(0, 100, search(false));
+        assertEquals(1, hot.size());
+        assertEquals(active, hot.get(0).getOrderId());
+
+        List<OrderQueryDto> history = orderRepository.findOrderQueryDtoOptimization(0, 100, search(true));
+        assertEquals(1, history.size());
+        assertEquals(canceled, history.get(0).getOrderId());
+        assertEquals("주문 아이템도 같이 옮겨진다", 1, history.get(0).getOrderItems().size());
+
+        // 스트리밍 API(v6 simple-orders, v7 orders) 도 history 를 따른다
+        Map<Long, Integer> streamed = new LinkedHashMap<>();
+        orderQueryService.streamSimpleOrders(search(true), 0, 100, collect(streamed));
+        assertEquals(Collections.singletonMap(canceled, 0), streamed);
+        streamed.clear();
+        orderQueryService.streamOrders(search(true), 0, 100, collect(streamed));
+        assertEquals(Collections.singletonMap(canceled, 1), streamed);
+        streamed.clear();
+        orderQueryService.streamOrders(search(false), 0, 100, collect(streamed));
+        assertEquals(Collections.singletonMap(active, 1), streamed);
+    }
+
+    // 주문 id -> 아이템 row 수
+    private OrderRowHandler collect(Map<Long, Integer> itemCounts) {
+        return new OrderRowHandler() {
+            private Long current;
+
+            @Override
+            public void order(Long orderId, String name, LocalDateTime orderDate, OrderStatus orderStatus, Address address) {
+                current = orderId;
+                itemCounts.put(orderId, 0);
+            }
+
+            @Override
+            public void orderItem(String itemName, int orderPrice, int count) {
+                itemCounts.merge(current, 1, Integer::sum);
+            }
+
+            @Override
+            public void endOrder() {
+                current = null;
+            }
+        };
+    }
+
+    private OrderSearch search(boolean history) {
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberName("아카이브회원");
+        orderSearch.setHistory(history);
+        return orderSearch;
+    }
+
+    private Member createMember(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberRepository.save(member);
+        return member;
+    }
+
+    private Item createBook(String name, int price, int stockQuantity) {
+        Item book = new Book();
+        book.setName(name);
+        book.setPrice(price);
+        book.setStockQuantity(stockQuantity);
+        itemRepository.save(book);
+        return book;
+    }
+}
@@ -0,0 +1,142 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NoSuchEntityException;
+import jpabook.jpashop.monitoring.SqlStatementCounter;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// 만건을 적재하면 pooled-lo 시퀀스 위치가 바뀌어 다른 쿼리 수 테스트의 기준이 흔들리므로 DB 를 따로 쓴다
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:order-ingest;DB_CLOSE_DELAY=-1")
+@Transactional
+public class OrderIngestBatchTest {
+
+    private static final int ORDER_COUNT = 10_000;
+
+    @Autowired OrderService orderService;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+    @Autowired SqlStatementCounter sqlStatementCounter;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired WebApplicationContext context;
+    @Autowired EntityManager em;
+
+    @Test
+    public void 대량_적재는_주문수가_아니라_batch_수만큼_SQL() throws Exception {
+        //given
+        Member member = createMember();
+        Item book = createBook(ORDER_COUNT);
+        List<OrderLine> lines = new ArrayList<>();
+        for (int i = 0; i < ORDER_COUNT; i++) {
+            lines.add(new OrderLine(member.getId(), book.getId(), 1));
+        }
+        em.flush();
+        em.clear();
+
+        //when
+        long before = sqlStatementCounter.current();
+        int ingested = orderService.ingest(lines);
+        em.flush();
+        long executed = sqlStatementCounter.current() - before;
+
+        //then
+        assertEquals(ORDER_COUNT, ingested);
+        assertEquals(ORDER_COUNT, (int) jdbcTemplate.queryForObject(
+                "select count(*) from orders where member_id = ?", Integer.class, member.getId()));
+        assertEquals(ORDER_COUNT, (int) jdbcTemplate.queryForObject(
+                "select count(*) from order_summary where member_id = ?", Integer.class, member.getId()));
+        // 1000 건마다 orders / delivery / order_item / order_summary insert batch 4번과 시퀀스(allocationSize 1000) 3번,
+        // 그 밖에 회원 / 상품 조회와 재고 차감
+        long perThousand = 4 + 3;
+        assertTrue("주문 " + ORDER_COUNT + " 건 적재에 SQL " + executed + " 번",
+                executed <= ORDER_COUNT / 1000 * perThousand + 10);
+    }
+
+    @Test
+    public void 없는_회원이나_상품이_있으면_주문을_만들지_않고_없는_id_를_알려준다() throws Exception {
+        //given
+        Member member = createMember();
+        Item book = createBook(10);
+        em.flush();
+        em.clear();
+
+        //when
+        List<OrderLine> unknownMembers = new ArrayList<>();
+        unknownMembers.add(new OrderLine(member.getId(), book.getId(), 1));
+        unknownMembers.add(new OrderLine(Long.MAX_VALUE, book.getId(), 1));
+        unknownMembers.add(new OrderLine(Long.MAX_VALUE - 1, book.getId(), 1));
+        String memberMessage = rejectedMessage(unknownMembers);
+
+        List<OrderLine> unknownItems = new ArrayList<>();
+        unknownItems.add(new OrderLine(member.getId(), book.getId(), 1));
+        unknownItems.add(new OrderLine(member.getId(), Long.MAX_VALUE, 1));
+        String itemMessage = rejectedMessage(unknownItems);
+
+        //then
+        assertTrue(memberMessage, memberMessage.contains("회원") && memberMessage.contains((Long.MAX_VALUE - 1) + ", " + Long.MAX_VALUE));
+        assertTrue(itemMessage, itemMessage.contains("상품") && itemMessage.contains(String.valueOf(Long.MAX_VALUE)));
+        em.clear();
+        assertEquals(0, (int) jdbcTemplate.queryForObject(
+                "select count(*) from orders where member_id = ?", Integer.class, member.getId()));
+    }
+
+    @Test
+    public void 없는_id_가_있는_대량_주문은_400() throws Exception {
+        Member member = createMember();
+        em.flush();
+
+        MockMvcBuilders.webAppContextSetup(context).build()
+                .perform(post("/api/orders/bulk").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"orders\":[{\"memberId\":" + member.getId() + ",\"itemId\":" + Long.MAX_VALUE + ",\"count\":1}]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private String rejectedMessage(List<OrderLine> lines) {
+        try {
+            orderService.ingest(lines);
+        } catch (NoSuchEntityException e) {
+            return e.getMessage();
+        }
+        throw new AssertionError("없는 id 예외가 발생해야 한다");
+    }
+
+    private Member createMember() {
+        Member member = new Member();
+        member.setName("적재회원");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberRepository.save(member);
+        return member;
+    }
+
+    private Item createBook(int stockQuantity) {
+        Item book = new Book();
+        book.setName("적재 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        itemRepository.save(book);
+        return book;
+    }
+}
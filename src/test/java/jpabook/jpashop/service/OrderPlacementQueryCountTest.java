@@ -0,0 +1,148 @@
+package jpabook.jpashop.service;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// 다른 테스트가 pooled-lo 시퀀스를 얼마나 썼는지에 따라 블록 경계의 next value 호출이 한쪽에만 끼므로
+// DB 를 따로 쓰고, 시퀀스 호출은 세지 않는다
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:order-placement;DB_CLOSE_DELAY=-1")
+@Transactional
+public class OrderPlacementQueryCountTest {
+
+    @Autowired OrderService orderService;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+    @Autowired SqlRecorder sqlRecorder;
+    @Autowired EntityManager em;
+
+    @Test
+    public void 주문_쿼리수는_회원의_주문이력과_무관() throws Exception {
+        //given
+        Item book = createBook("시골 JPA", 10000, 100_000);
+        Member fewOrders = createMemberWithOrders("회원10", 10, book);
+        Member manyOrders = createMemberWithOrders("회원1000", 1000, book);
+
+        //when
+        List<String> fewSql = recordOrder(fewOrders, book);
+        List<String> manySql = recordOrder(manyOrders, book);
+
+        //then
+        assertEquals("주문 이력이 10건이든 1000건이든 주문 한건의 SQL 수는 같아야 한다", fewSql.size(), manySql.size());
+        for (String sql : manySql) {
+            assertTrue("회원의 주문 목록을 조회하면 안 된다 : " + sql, !isMemberOrdersQuery(sql));
+        }
+        assertEquals("주문 목록 컬렉션은 조회하지 않아야 한다", 0, statistics().getCollectionLoadCount());
+    }
+
+    // 시퀀스 호출을 뺀 주문 한건의 SQL
+    private List<String> recordOrder(Member member, Item item) {
+        em.flush();
+        em.clear();
+        statistics().clear();
+
+        sqlRecorder.start();
+        try {
+            orderService.order(member.getId(), item.getId(), 1);
+            em.flush();
+        } finally {
+            sqlRecorder.stop();
+        }
+        return sqlRecorder.getRecorded().stream()
+                .filter(sql -> !sql.toLowerCase().contains("next value for"))
+                .collect(Collectors.toList());
+    }
+
+    // select ... from orders o where o.member_id=?
+    private boolean isMemberOrdersQuery(String sql) {
+        String lower = sql.toLowerCase();
+        return lower.startsWith("select") && lower.contains(" from orders ") && lower.contains("member_id=");
+    }
+
+    private Member createMemberWithOrders(String name, int orderCount, Item item) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberRepository.save(member);
+
+        for (int i = 0; i < orderCount; i++) {
+            orderService.order(member.getId(), item.getId(), 1);
+        }
+        return member;
+    }
+
+    private Item createBook(String name, int price, int stockQuantity) {
+        Item book = new Book();
+        book.setName(name);
+        book.setPrice(price);
+        book.setStockQuantity(stockQuantity);
+        itemRepository.save(book);
+        return book;
+    }
+
+    private Statistics statistics() {
+        return em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @TestConfiguration
+    static class Config {
+
+        @Bean
+        SqlRecorder sqlRecorder() {
+            return new SqlRecorder();
+        }
+    }
+
+    // start ~ stop 사이에 이 스레드에서 실행된 SQL 을 모은다. p6spy 가 JdbcEventListener 빈으로 등록한다
+    static class SqlRecorder extends SimpleJdbcEventListener {
+
+        private final ThreadLocal<List<String>> recording = new ThreadLocal<>();
+        private List<String> recorded = new ArrayList<>();
+
+        void start() {
+            recorded = new ArrayList<>();
+            recording.set(recorded);
+        }
+
+        void stop() {
+            recording.remove();
+        }
+
+        List<String> getRecorded() {
+            return recorded;
+        }
+
+        @Override
+        public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+            List<String> sqls = recording.get();
+            if (sqls != null) {
+                sqls.add(statementInformation.getSql());
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package jpabook.jpashop.service;
 
 
 import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.DeliveryStatus;
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.domain.OrderStatus;
@@ -18,6 +19,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
@@ -82,6 +86,33 @@ public class OrderServiceTest {
         assertEquals("주문 취소시 상품은 그만큼 재고가 다시 증가해야 한다", 10, book.getStockQuantity());
     }
 
+    @Test
+    public void 대량_주문취소() throws Exception {
+        //given
+        Member member = createMember();
+        Item book = createBook("시골 JPA", 10000, 10);
+        Long first = orderService.order(member.getId(), book.getId(), 2);
+        Long second = orderService.order(member.getId(), book.getId(), 2);
+        Long delivered = orderService.order(member.getId(), book.getId(), 2);
+        Long canceled = orderService.order(member.getId(), book.getId(), 2);
+        orderService.cancelOrder(canceled);
+        orderRepository.findById(delivered).get().getDelivery().setStatus(DeliveryStatus.COMP);
+        Long notFound = -1L;
+
+        //when
+        BulkCancelResult result = orderService.cancelOrders(Arrays.asList(first, second, delivered, canceled, notFound, first));
+
+        //then
+        assertEquals("배송 전인 주문만 취소된다", 2, result.getCanceled());
+        assertEquals(Collections.singletonList(delivered), result.getDelivered());
+        assertEquals(Collections.singletonList(canceled), result.getAlreadyCanceled());
+        assertEquals(Collections.singletonList(notFound), result.getNotFound());
+        assertEquals(OrderStatus.CANCEL, orderRepository.findById(first).get().getStatus());
+        assertEquals(OrderStatus.CANCEL, orderRepository.findById(second).get().getStatus());
+        assertEquals(OrderStatus.ORDER, orderRepository.findById(delivered).get().getStatus());
+        assertEquals("취소된 주문 수량만큼 재고가 다시 증가해야 한다", 8, book.getStockQuantity());
+    }
+
     private Item createBook(String name, int price, int stockQuantity) {
         Item book = new Book();
         book.setName(name);
@@ -0,0 +1,107 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 운영 설정처럼 2차 캐시를 켜고, 캐시된 엔티티를 바꾸는 경로마다 다음 트랜잭션이 새 값을 읽는지 본다.
+ * 2차 캐시는 트랜잭션 사이에서만 의미가 있으므로 @Transactional 을 붙이지 않고, 설정이 다르니 DB 도 따로 쓴다.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:second-level-cache;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+        "spring.jpa.properties.hibernate.cache.region.factory_class=jcache",
+        "spring.jpa.properties.hibernate.javax.cache.provider=org.ehcache.jsr107.EhcacheCachingProvider",
+        "spring.jpa.properties.hibernate.javax.cache.uri=classpath:ehcache.xml"})
+public class SecondLevelCacheTest {
+
+    @Autowired ItemService itemService;
+    @Autowired MemberService memberService;
+    @Autowired OrderService orderService;
+    @Autowired EntityManagerFactory entityManagerFactory;
+
+    @Test
+    public void 상품_수정후_새_값() throws Exception {
+        //given
+        Long itemId = createBook("캐시 JPA", 10);
+        assertCachedRead(() -> itemService.findById(itemId));
+
+        //when
+        itemService.updateItem(itemId, "바뀐 캐시 JPA", 20000, 10);
+
+        //then
+        Item item = itemService.findById(itemId);
+        assertEquals("바뀐 캐시 JPA", item.getName());
+        assertEquals(20000, item.getPrice());
+    }
+
+    @Test
+    public void 회원_이름변경후_새_값() throws Exception {
+        //given
+        Long memberId = createMember("캐시회원");
+        assertCachedRead(() -> memberService.findById(memberId));
+
+        //when
+        memberService.update(memberId, "바뀐캐시회원");
+
+        //then
+        assertEquals("바뀐캐시회원", memberService.findById(memberId).getName());
+    }
+
+    @Test
+    public void JDBC_재고차감후_새_값() throws Exception {
+        //given
+        Long memberId = createMember("캐시주문회원");
+        Long itemId = createBook("캐시 재고 JPA", 10);
+        assertCachedRead(() -> itemService.findById(itemId));
+
+        //when
+        orderService.order(memberId, itemId, 3);
+
+        //then
+        assertEquals("JDBC update 는 변경감지를 거치지 않으므로 직접 evict 해야 한다",
+                7, itemService.findById(itemId).getStockQuantity());
+    }
+
+    // 한번 읽어 캐시에 넣고, 다시 읽으면 DB 대신 2차 캐시에서 온다
+    private void assertCachedRead(Runnable read) {
+        read.run();
+        long hits = statistics().getSecondLevelCacheHitCount();
+        read.run();
+        assertEquals("2차 캐시 적중", hits + 1, statistics().getSecondLevelCacheHitCount());
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private Long createBook(String name, int stockQuantity) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        itemService.saveItem(book);
+        return book.getId();
+    }
+
+    private Long createMember(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        return memberService.join(member);
+    }
+}
@@ -0,0 +1,147 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// 스레드마다 별도 트랜잭션으로 커밋되어야 하므로 @Transactional 을 붙이지 않는다
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class StockConcurrencyTest {
+
+    private static final Logger log = LoggerFactory.getLogger(StockConcurrencyTest.class);
+
+    @Autowired OrderService orderService;
+    @Autowired ItemRepository itemRepository;
+    @Autowired MemberRepository memberRepository;
+    @Autowired OrderRepository orderRepository;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired ItemService itemService;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private Member member;
+    private Item book;
+
+    // 커밋된 주문이 다른 테스트의 검색 / archive 결과에 섞이지 않도록 지운다
+    @After
+    public void tearDown() {
+        jdbcTemplate.queryForList("select order_id from orders where member_id = ?", Long.class, member.getId())
+                .forEach(orderRepository::deleteById);
+        itemRepository.deleteById(book.getId());
+        memberRepository.deleteById(member.getId());
+    }
+
+    @Test
+    public void 동시주문_재고초과판매_없음() throws Exception {
+        //given
+        int stock = 100;
+        int threads = 16;
+        int attempts = 300;
+        member = createMember();
+        book = createBook("동시성 JPA", 10000, stock);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger success = new AtomicInteger();
+        AtomicInteger soldOut = new AtomicInteger();
+
+        //when
+        for (int i = 0; i < attempts; i++) {
+            executor.submit(() -> {
+                start.await();
+                try {
+                    orderService.order(member.getId(), book.getId(), 1);
+                    success.incrementAndGet();
+                } catch (NotEnoughStockException e) {
+                    soldOut.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        long startedAt = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+        double ordersPerSecond = attempts / seconds;
+        // 처리량은 호스트 부하에 따라 흔들리므로 기록만 한다. 비교할 숫자는 StockContentionBenchmark.order 로 잰다
+        log.info("동시 주문 {}건 / {}스레드 : {}ms, {} ops/s", attempts, threads,
+                Math.round(seconds * 1000), Math.round(ordersPerSecond));
+
+        //then
+        Item findItem = itemRepository.findById(book.getId()).orElse(null);
+        assertEquals("재고만큼만 주문이 성공해야 한다", stock, success.get());
+        assertEquals("나머지는 재고 부족이어야 한다", attempts - stock, soldOut.get());
+        assertEquals("재고는 음수가 되면 안된다", 0, findItem.getStockQuantity());
+    }
+
+    @Test
+    public void 상품명_수정중에_커밋된_주문의_재고차감이_유지된다() throws Exception {
+        //given
+        member = createMember();
+        book = createBook("수정전 JPA", 10000, 10);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        //when : 수정 트랜잭션이 상품을 읽은 뒤, 커밋하기 전에 다른 트랜잭션의 주문이 커밋된다
+        transactionTemplate.execute(status -> {
+            int loadedStock = itemService.findById(book.getId()).getStockQuantity();
+            try {
+                executor.submit(() -> orderService.order(member.getId(), book.getId(), 1)).get(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            itemService.updateItem(book.getId(), "수정후 JPA", 12000, loadedStock);
+            return null;
+        });
+        executor.shutdown();
+
+        //then
+        Item findItem = itemRepository.findById(book.getId()).orElse(null);
+        assertEquals("수정후 JPA", findItem.getName());
+        assertEquals(12000, findItem.getPrice());
+        assertEquals("이름 / 가격만 바꾸는 수정이 주문 차감을 덮어쓰면 안 된다", 9, findItem.getStockQuantity());
+    }
+
+    private Item createBook(String name, int price, int stockQuantity) {
+        Item book = new Book();
+        book.setName(name);
+        book.setPrice(price);
+        book.setStockQuantity(stockQuantity);
+        itemRepository.save(book);
+        return book;
+    }
+
+    private Member createMember() {
+        Member member = new Member();
+        member.setName("동시성회원");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberRepository.save(member);
+        return member;
+    }
+}
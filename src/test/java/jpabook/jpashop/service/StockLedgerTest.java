@@ -0,0 +1,164 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.domain.item.StockPolicy;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.StockLedgerEntryRepository;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// 주문 / 재설정이 각자 커밋되어야 하므로 @Transactional 을 붙이지 않는다
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class StockLedgerTest {
+
+    @Autowired StockLedger stockLedger;
+    @Autowired StockService stockService;
+    @Autowired ItemService itemService;
+    @Autowired ItemRepository itemRepository;
+    @Autowired StockLedgerEntryRepository entryRepository;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired EntityManagerFactory entityManagerFactory;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private final List<Long> itemIds = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (Long itemId : itemIds) {
+            stockService.changePolicy(itemId, StockPolicy.DIRECT);
+            itemRepository.deleteById(itemId);
+        }
+    }
+
+    @Test
+    public void 진행중인_주문이_있을때_재고재설정() throws Exception {
+        //given
+        Long itemId = createLedgerBook(100);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch reserved = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+
+        // 메모리에서는 빠졌지만 아직 커밋 안 된 주문
+        Future<?> order = executor.submit(() -> transactionTemplate.execute(status -> {
+            stockService.reserve(itemId, 1);
+            reserved.countDown();
+            await(commit);
+            return null;
+        }));
+        assertTrue(reserved.await(10, TimeUnit.SECONDS));
+
+        //when
+        // 재설정이 커밋된 값만 보고 다시 시드하면 진행 중인 차감분이 사라진다
+        Future<Integer> admin = executor.submit(() -> transactionTemplate.execute(status -> {
+            stockLedger.invalidate(itemId);
+            return stockLedger.available(itemId);
+        }));
+        Thread.sleep(200);
+        commit.countDown();
+        order.get(10, TimeUnit.SECONDS);
+        int availableInAdmin = admin.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        //then
+        assertEquals("재설정은 진행 중인 주문이 끝난 뒤에 본다", 99, availableInAdmin);
+        assertEquals("다시 시드해도 커밋된 차감분이 남아야 한다", 99, stockLedger.available(itemId));
+        for (int i = 0; i < 99; i++) {
+            reserveInTransaction(itemId, 1);
+        }
+        try {
+            reserveInTransaction(itemId, 1);
+            fail("재고보다 많이 팔리면 안된다");
+        } catch (NotEnoughStockException e) {
+        }
+        stockLedger.flushAll();
+        assertEquals(0, stockQuantityOf(itemId));
+    }
+
+    @Test
+    public void 미반영_저널이_있을때_재고수정() throws Exception {
+        //given
+        Long itemId = createLedgerBook(100);
+        reserveInTransaction(itemId, 10);
+
+        //when
+        itemService.updateItem(itemId, "원장 JPA", 10000, 50);
+        reserveInTransaction(itemId, 5);
+        stockLedger.flushAll();
+
+        //then
+        assertEquals("수정한 재고에서 이후 주문만 빠져야 한다", 45, stockLedger.available(itemId));
+        assertEquals("수정 전 저널이 수정한 값에 다시 더해지면 안된다", 45, stockQuantityOf(itemId));
+    }
+
+    @Test
+    public void 재시작후_다시시드() throws Exception {
+        //given
+        Long itemId = createLedgerBook(100);
+        reserveInTransaction(itemId, 30);
+        new TransactionTemplate(transactionManager).execute(status -> {
+            stockService.release(itemId, 5);
+            return null;
+        });
+
+        //when
+        StockLedger restarted = new StockLedger(entryRepository, jdbcTemplate, entityManagerFactory, transactionManager);
+
+        //then
+        assertEquals("item.stock_quantity + 미반영 저널로 시드한다", 75, restarted.available(itemId));
+        stockLedger.flushAll();
+        assertEquals(75, stockQuantityOf(itemId));
+        assertEquals("반영 후에 시드해도 같다",
+                75, new StockLedger(entryRepository, jdbcTemplate, entityManagerFactory, transactionManager).available(itemId));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void reserveInTransaction(Long itemId, int count) {
+        new TransactionTemplate(transactionManager).execute(status -> stockService.reserve(itemId, count));
+    }
+
+    private int stockQuantityOf(Long itemId) {
+        return jdbcTemplate.queryForObject("select stock_quantity from item where item_id = ?", Integer.class, itemId);
+    }
+
+    private Long createLedgerBook(int stockQuantity) {
+        Item book = new Book();
+        book.setName("원장 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        Long itemId = itemRepository.save(book).getId();
+        itemIds.add(itemId);
+        stockService.changePolicy(itemId, StockPolicy.LEDGER);
+        return itemId;
+    }
+}
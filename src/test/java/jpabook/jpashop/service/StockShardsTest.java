@@ -0,0 +1,77 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.ItemStockShardRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class StockShardsTest {
+
+    @Autowired ItemStockShardRepository shardRepository;
+    @Autowired ItemRepository itemRepository;
+
+    @Test
+    public void 재고복구_샤드수가_바뀌어도_있는_샤드로() throws Exception {
+        //given
+        Item book = createBook(100);
+        new StockShards(shardRepository, 4).split(book);
+        StockShards resized = new StockShards(shardRepository, 32);
+
+        //when
+        for (int i = 0; i < 50; i++) {
+            resized.release(book.getId(), 2);
+        }
+
+        //then
+        assertEquals("복구한 수량이 빠짐없이 더해져야 한다", 200, resized.available(book.getId()));
+        assertEquals("샤드가 새로 생기지 않는다", 4, shardRepository.findShardNos(book.getId()).size());
+    }
+
+    @Test
+    public void 차감후_복구() throws Exception {
+        //given
+        Item book = createBook(100);
+        StockShards stockShards = new StockShards(shardRepository, 16);
+        stockShards.split(book);
+
+        //when
+        stockShards.reserve(book.getId(), 30);
+        stockShards.release(book.getId(), 10);
+
+        //then
+        assertEquals(80, stockShards.available(book.getId()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void 샤드없는_상품_재고복구_예외발생() throws Exception {
+        //given
+        Item book = createBook(100);
+
+        //when
+        new StockShards(shardRepository, 16).release(book.getId(), 1);
+
+        //then
+        fail("샤드가 없으면 재고를 버리지 않고 예외가 발생해야 한다");
+    }
+
+    private Item createBook(int stockQuantity) {
+        Item book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        itemRepository.save(book);
+        return book;
+    }
+}
@@ -0,0 +1,227 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.order.query.OrderItemQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import jpabook.jpashop.service.OrderService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class OrderReadServiceTest {
+
+    private static final int LIMIT = 3;
+
+    @Autowired OrderReadService orderReadService;
+    @Autowired OrderService orderService;
+    @Autowired OrderRepository orderRepository;
+    @Autowired MemberRepository memberRepository;
+    @Autowired ItemRepository itemRepository;
+    @Autowired EntityManager em;
+
+    @Test
+    public void 모든_전략이_같은_페이지를_돌려준다() throws Exception {
+        //given
+        Member member = createMember();
+        Item first = createBook("전략 JPA1");
+        Item second = createBook("전략 JPA2");
+        for (int i = 0; i < 7; i++) {
+            Map<Long, Integer> cart = new LinkedHashMap<>();
+            cart.put(first.getId(), 1);
+            if (i % 2 == 0) {
+                cart.put(second.getId(), 2);
+            }
+            orderService.orderCart(member.getId(), cart);
+        }
+        // 아이템이 없는 주문도 모든 전략에 같이 나와야 한다
+        Delivery delivery = new Delivery();
+        delivery.setAddress(member.getAddress());
+        em.persist(Order.createOrder(member, delivery));
+        em.flush();
+        em.clear();
+
+        for (int offset = 0; offset < orderRepository.count(); offset += LIMIT) {
+            //when
+            List<String> expected = page(OrderReadStrategy.IN_QUERY, offset);
+
+            //then
+            for (OrderReadStrategy strategy : OrderReadStrategy.values()) {
+                assertEquals(strategy + " offset " + offset, expected, page(strategy, offset));
+            }
+        }
+    }
+
+    @Test
+    public void 안_써본_전략부터_써본다() throws Exception {
+        OrderReadService service = new OrderReadService(orderRepository, () -> 0L, bound -> 0);
+
+        // 먼저 쓴 전략이 아무리 빨라도 나머지 후보를 한번씩은 재본다
+        for (OrderReadStrategy strategy : OrderReadStrategy.values()) {
+            assertEquals(strategy, service.choose());
+            service.record(strategy, orders(10, 1), 10);
+        }
+    }
+
+    @Test
+    public void 주문당_지연시간이_가장_낮은_전략으로_수렴한다() throws Exception {
+        //given
+        OrderReadService service = new OrderReadService(orderRepository, () -> 0L, bound -> 0);
+        recordAll(service, 100, 200, 300, 400);
+        assertEquals(OrderReadStrategy.FETCH_JOIN, service.choose());
+
+        //when : fetch join 이 느려졌다
+        for (int i = 0; i < 30; i++) {
+            service.record(OrderReadStrategy.FETCH_JOIN, orders(10, 1), 10 * 1000);
+        }
+
+        //then
+        assertEquals(1000, service.getLatencyPerOrderNanos().get(OrderReadStrategy.FETCH_JOIN), 2);
+        assertEquals(OrderReadStrategy.BATCH_FETCH, service.choose());
+    }
+
+    @Test
+    public void EXPLORE_EVERY_번에_한번은_다른_후보를_다시_잰다() throws Exception {
+        //given : 가장 빠른 건 FETCH_JOIN, 탐색은 항상 마지막 후보(FLAT_JOIN)를 고른다
+        List<Integer> bounds = new ArrayList<>();
+        OrderReadService service = new OrderReadService(orderRepository, () -> 0L, bound -> {
+            bounds.add(bound);
+            return bound - 1;
+        });
+        recordAll(service, 100, 200, 300, 400);
+
+        for (int call = 1; call <= OrderReadService.EXPLORE_EVERY * 3; call++) {
+            //when
+            OrderReadStrategy chosen = service.choose();
+
+            //then
+            OrderReadStrategy expected = call % OrderReadService.EXPLORE_EVERY == 0
+                    ? OrderReadStrategy.FLAT_JOIN : OrderReadStrategy.FETCH_JOIN;
+            assertEquals("call " + call, expected, chosen);
+        }
+        assertEquals("탐색은 후보 전체에서 고른다", Arrays.asList(4, 4, 4), bounds);
+    }
+
+    @Test
+    public void 주문당_아이템이_많으면_조인_전략은_후보에서_뺀다() throws Exception {
+        //given : 조인 전략이 가장 빨랐다
+        OrderReadService service = new OrderReadService(orderRepository, () -> 0L, bound -> 0);
+        recordAll(service, 100, 300, 400, 200);
+
+        //when
+        while (service.getItemsPerOrder() <= OrderReadService.MAX_JOIN_FAN_OUT) {
+            service.record(OrderReadStrategy.IN_QUERY, orders(10, 50), 10 * 400);
+        }
+
+        //then
+        assertEquals(EnumSet.of(OrderReadStrategy.BATCH_FETCH, OrderReadStrategy.IN_QUERY), service.candidates());
+        for (int call = 1; call <= OrderReadService.EXPLORE_EVERY; call++) {
+            OrderReadStrategy chosen = service.choose();
+            assertTrue(chosen.toString(), service.candidates().contains(chosen));
+        }
+    }
+
+    @Test
+    public void 주입한_시계로_주문_1건당_지연시간을_잰다() throws Exception {
+        //given : 전략마다 시작 / 끝 시각을 차례로 돌려준다
+        Member member = createMember();
+        Item book = createBook("시계 JPA");
+        for (int i = 0; i < LIMIT; i++) {
+            orderService.order(member.getId(), book.getId(), 1);
+        }
+        em.flush();
+        em.clear();
+        Iterator<Long> ticks = Arrays.asList(0L, 3000L, 0L, 6000L, 0L, 9000L, 0L, 12000L).iterator();
+        OrderReadService service = new OrderReadService(orderRepository, ticks::next, bound -> 0);
+
+        //when
+        for (int i = 0; i < OrderReadStrategy.values().length; i++) {
+            assertEquals(LIMIT, service.findOrders(new OrderSearch(), 0, LIMIT).size());
+            em.clear();
+        }
+
+        //then
+        Map<OrderReadStrategy, Double> latency = service.getLatencyPerOrderNanos();
+        assertEquals(1000, latency.get(OrderReadStrategy.FETCH_JOIN), 0);
+        assertEquals(2000, latency.get(OrderReadStrategy.BATCH_FETCH), 0);
+        assertEquals(3000, latency.get(OrderReadStrategy.IN_QUERY), 0);
+        assertEquals(4000, latency.get(OrderReadStrategy.FLAT_JOIN), 0);
+        assertEquals(OrderReadStrategy.FETCH_JOIN, service.choose());
+    }
+
+    // FETCH_JOIN, BATCH_FETCH, IN_QUERY, FLAT_JOIN 순서로 주문 1건당 지연시간을 한번씩 기록한다
+    private void recordAll(OrderReadService service, long... latencyPerOrder) {
+        OrderReadStrategy[] strategies = OrderReadStrategy.values();
+        for (int i = 0; i < strategies.length; i++) {
+            service.record(strategies[i], orders(10, 1), 10 * latencyPerOrder[i]);
+        }
+    }
+
+    private List<OrderQueryDto> orders(int count, int itemsPerOrder) {
+        List<OrderQueryDto> orders = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            List<OrderItemQueryDto> items = new ArrayList<>();
+            for (int i = 0; i < itemsPerOrder; i++) {
+                items.add(new OrderItemQueryDto(id, "아이템" + i, 1000, 1));
+            }
+            orders.add(new OrderQueryDto(id, "회원", null, null, null, items));
+        }
+        return orders;
+    }
+
+    // 주문마다 "id:아이템명,..." 로 펼쳐서 비교한다. 주문 안의 아이템 순서는 전략마다 다를 수 있어 정렬한다
+    private List<String> page(OrderReadStrategy strategy, int offset) {
+        List<OrderQueryDto> orders = orderReadService.read(strategy, new OrderSearch(), offset, LIMIT);
+        em.clear();
+        return orders.stream()
+                .map(o -> o.getOrderId() + ":" + o.getOrderItems().stream()
+                        .map(OrderItemQueryDto::getItemName)
+                        .sorted()
+                        .collect(toList()))
+                .collect(toList());
+    }
+
+    private Member createMember() {
+        Member member = new Member();
+        member.setName("전략회원");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        memberRepository.save(member);
+        return member;
+    }
+
+    private Item createBook(String name) {
+        Item book = new Book();
+        book.setName(name);
+        book.setPrice(10000);
+        book.setStockQuantity(100);
+        itemRepository.save(book);
+        return book;
+    }
+}
@@ -0,0 +1,114 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.repository.OrderSearch;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+
+// 트랜잭션 밖이므로 무효화는 커밋을 기다리지 않고 바로 일어난다
+public class OrderSearchCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Supplier<List<String>> loader = () -> {
+        loads.incrementAndGet();
+        return Collections.singletonList("order");
+    };
+
+    @Test
+    public void 빈_회원명은_조건없음과_같은_키() throws Exception {
+        //given
+        OrderSearchCache cache = new OrderSearchCache(100, 0);
+
+        //when
+        cache.get("v5", search(null, null), 0, 10, loader);
+        cache.get("v5", search("", null), 0, 10, loader);
+        cache.get("v5", search(" ", null), 0, 10, loader);
+
+        //then
+        assertEquals("null / 빈 문자열 / 공백은 같은 키", 1, loads.get());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void 주문이_들어갈_수_있는_키만_지운다() throws Exception {
+        //given
+        OrderSearchCache cache = new OrderSearchCache(100, 0);
+        cache.get("v5", search("kim", OrderStatus.ORDER), 0, 10, loader);
+        cache.get("v5", search("ki", null), 0, 10, loader);
+        cache.get("v5", search(null, null), 0, 10, loader);
+        cache.get("v5", search("lee", OrderStatus.ORDER), 0, 10, loader);
+        cache.get("v5", search("kim", OrderStatus.CANCEL), 0, 10, loader);
+        cache.get("v5", search(null, OrderStatus.CANCEL), 0, 10, loader);
+
+        //when
+        cache.orderChanged("kim", OrderStatus.ORDER);
+
+        //then
+        assertEquals("kim+ORDER, ki(like), 조건 없음 세개만 지운다", 3, cache.getInvalidationCount());
+        assertEquals(3, cache.getSize());
+        loads.set(0);
+        cache.get("v5", search("lee", OrderStatus.ORDER), 0, 10, loader);
+        cache.get("v5", search("kim", OrderStatus.CANCEL), 0, 10, loader);
+        cache.get("v5", search(null, OrderStatus.CANCEL), 0, 10, loader);
+        assertEquals("다른 회원 / 다른 상태의 결과는 남아 있다", 0, loads.get());
+    }
+
+    @Test
+    public void 조회_도중_무효화되면_캐시하지_않는다() throws Exception {
+        //given
+        OrderSearchCache cache = new OrderSearchCache(100, 0);
+
+        //when
+        List<String> result = cache.get("v5", search(null, null), 0, 10, () -> {
+            cache.orderChanged("kim", OrderStatus.ORDER);
+            return loader.get();
+        });
+
+        //then
+        assertEquals("읽은 결과는 돌려준다", 1, result.size());
+        assertEquals("무효화 전의 값일 수 있으므로 넣지 않는다", 0, cache.getSize());
+    }
+
+    @Test
+    public void TTL_이_지나면_다시_읽는다() throws Exception {
+        //given
+        OrderSearchCache cache = new OrderSearchCache(100, 1);
+        cache.get("v5", search(null, null), 0, 10, loader);
+
+        //when
+        Thread.sleep(10);
+        cache.get("v5", search(null, null), 0, 10, loader);
+
+        //then
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getExpirationCount());
+    }
+
+    @Test
+    public void 아이템명이_바뀌면_전부_지운다() throws Exception {
+        //given
+        OrderSearchCache cache = new OrderSearchCache(100, 0);
+        cache.get("v5", search("kim", OrderStatus.ORDER), 0, 10, loader);
+        cache.get("v5", search(null, null), 0, 10, loader);
+
+        //when
+        cache.itemRenamed();
+
+        //then
+        assertEquals(0, cache.getSize());
+        assertEquals(2, cache.getInvalidationCount());
+    }
+
+    private OrderSearch search(String memberName, OrderStatus orderStatus) {
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberName(memberName);
+        orderSearch.setOrderStatus(orderStatus);
+        return orderSearch;
+    }
+}
@@ -0,0 +1,75 @@
+package jpabook.jpashop.support;
+
+import jpabook.jpashop.monitoring.SqlStatementCounter;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 호출 한번에 실행된 SQL 수(p6spy)와 DB 에서 로딩한 엔티티 수(Hibernate Statistics)를 센다.
+ *
+ * <pre>
+ * queryCounter.count(() -> mockMvc.perform(get("/api/v5/orders")))
+ *         .assertStatementsAtMost(2)
+ *         .assertEntityLoadsAtMost(0);
+ * </pre>
+ *
+ * 같은 스레드에서 실행된 SQL 만 센다. 영속성 컨텍스트에 이미 있는 엔티티는 쿼리가 안 나가므로 측정 전에 flush / clear 해야 한다.
+ */
+public class QueryCounter {
+
+    private final Statistics statistics;
+    private final SqlStatementCounter sqlStatementCounter;
+
+    public QueryCounter(EntityManagerFactory entityManagerFactory, SqlStatementCounter sqlStatementCounter) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.sqlStatementCounter = sqlStatementCounter;
+    }
+
+    public Result count(Callable<?> call) throws Exception {
+        statistics.clear();
+        long before = sqlStatementCounter.current();
+        call.call();
+        return new Result(sqlStatementCounter.current() - before,
+                statistics.getEntityLoadCount(), statistics.getCollectionLoadCount());
+    }
+
+    public static class Result {
+
+        private final long statements;
+        private final long entityLoads;
+        private final long collectionLoads;
+
+        Result(long statements, long entityLoads, long collectionLoads) {
+            this.statements = statements;
+            this.entityLoads = entityLoads;
+            this.collectionLoads = collectionLoads;
+        }
+
+        public Result assertStatementsAtMost(long max) {
+            assertTrue("SQL " + statements + "회 실행, 최대 " + max + "회여야 한다", statements <= max);
+            return this;
+        }
+
+        public Result assertEntityLoadsAtMost(long max) {
+            assertTrue("엔티티 " + entityLoads + "개 로딩, 최대 " + max + "개여야 한다", entityLoads <= max);
+            return this;
+        }
+
+        public long getStatements() {
+            return statements;
+        }
+
+        public long getEntityLoads() {
+            return entityLoads;
+        }
+
+        public long getCollectionLoads() {
+            return collectionLoads;
+        }
+    }
+}